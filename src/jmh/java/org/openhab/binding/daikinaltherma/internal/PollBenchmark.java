@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2010-2019 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.daikinaltherma.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.websocket.client.WebSocketClient;
+import org.openhab.binding.daikinaltherma.internal.tests.AdapterSimulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures complete polling rounds over all captured items against the simulated adapter on localhost, one
+ * operation is one round.
+ *
+ * @author Karsten Becker - Initial contribution
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PollBenchmark {
+
+    @Param({ "1", "8" })
+    public int maxInFlight;
+
+    @Param({ "0", "5" })
+    public long latencyMillis;
+
+    private AdapterSimulator simulator;
+    private WebSocketClient client;
+    private WebsocketHelper helper;
+    private List<String> items;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Map<String, String> capture = AdapterSimulator
+                .loadCapture(PollBenchmark.class.getResourceAsStream("/responseCapture.txt"));
+        items = new ArrayList<>(capture.keySet());
+        simulator = new AdapterSimulator(capture, 1).withLatency(latencyMillis);
+        simulator.start();
+        client = new WebSocketClient();
+        client.start();
+        helper = new WebsocketHelper(client);
+        helper.setMaxInFlight(maxInFlight);
+        if (!helper.connectAsync(simulator.getUri(0)).get())
+            throw new IllegalStateException("Could not connect to the simulator");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        helper.disconnect();
+        client.stop();
+        simulator.close();
+    }
+
+    @Benchmark
+    public Map<String, Optional<M2mResponse>> pollRound() throws Exception {
+        return helper.queryAll(items).get();
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2010-2019 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.daikinaltherma.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.openhab.binding.daikinaltherma.internal.tests.AdapterSimulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the code that runs for every request and reply, and of the processing of the UnitProfiles during
+ * discovery. Run with <code>mvn -P jmh verify</code>, which also reports the allocation rate.
+ *
+ * @author Karsten Becker - Initial contribution
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProtocolBenchmark {
+
+    private static final String ITEM = "2/Operation/TargetTemperature/la";
+
+    private String reply = "";
+
+    private final FrameTemplate template = new FrameTemplate(ITEM, WebsocketHelper.OP_RETRIEVE,
+            WebsocketHelper.ITEM_PREFIX + ITEM, "");
+
+    private long rqi;
+
+    private final List<String> profiles = new ArrayList<>();
+
+    @Setup
+    public void setUp() throws IOException {
+        Map<String, String> capture = AdapterSimulator
+                .loadCapture(ProtocolBenchmark.class.getResourceAsStream("/responseCapture.txt"));
+        reply = capture.get(ITEM);
+        for (Entry<String, String> entry : capture.entrySet()) {
+            if (entry.getKey().endsWith("/UnitProfile/la")) {
+                String con = ResponseDecoder.decode(entry.getValue()).getContent();
+                if (con != null)
+                    profiles.add(con);
+            }
+        }
+    }
+
+    @Benchmark
+    public String buildRequest() {
+        return WebsocketHelper.buildFrame(WebsocketHelper.OP_RETRIEVE, WebsocketHelper.ITEM_PREFIX + ITEM,
+                "c78b60079fb05f10", "");
+    }
+
+    /**
+     * Filling in the rqi of a template, which is how requests are built now
+     */
+    @Benchmark
+    public String fillTemplate() {
+        return template.fill(rqi++);
+    }
+
+    @Benchmark
+    public void decodeResponse(Blackhole bh) throws IOException {
+        M2mResponse rsp = ResponseDecoder.decode(reply);
+        bh.consume(rsp.getRequestId());
+        bh.consume(rsp.getStateTag());
+        bh.consume(rsp.getContent());
+    }
+
+    /**
+     * The tree based parsing the binding used before the streaming decoder, as a baseline
+     */
+    @Benchmark
+    public void parseResponseTree(Blackhole bh) {
+        JsonObject rsp = new JsonParser().parse(reply).getAsJsonObject().get("m2m:rsp").getAsJsonObject();
+        JsonObject cin = rsp.get("pc").getAsJsonObject().get("m2m:cin").getAsJsonObject();
+        bh.consume(rsp.get("rqi").getAsString());
+        bh.consume(cin.get("st").getAsLong());
+        bh.consume(cin.get("con").getAsString());
+    }
+
+    @Benchmark
+    public void collectProfileItems(Blackhole bh) {
+        int unit = 0;
+        for (String profile : profiles) {
+            Map<String, JsonElement> items = new LinkedHashMap<>();
+            ChannelDiscovery.collectItems(new JsonParser().parse(profile), Integer.toString(unit++), items);
+            for (Entry<String, JsonElement> item : items.entrySet()) {
+                bh.consume(ChannelDiscovery.inferType(item.getKey(), item.getValue()));
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2010-2019 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.daikinaltherma;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The {@link MetricsSink} receives the metrics of all adapters, so they can be passed on to a monitoring system. An
+ * implementation can be registered as OSGi service by another bundle, which is why it is outside of the internal
+ * package. The calls are made on the hot path and must not block.
+ *
+ * @author Karsten Becker - Initial contribution
+ */
+@NonNullByDefault
+public interface MetricsSink {
+
+    MetricsSink NONE = new MetricsSink() {
+        @Override
+        public void increment(String thing, String name) {
+        }
+
+        @Override
+        public void record(String thing, String name, @Nullable String item, long millis) {
+        }
+
+        @Override
+        public void gauge(String thing, String name, long value) {
+        }
+    };
+
+    /**
+     * Counts an event, e.g. a timeout
+     */
+    void increment(String thing, String name);
+
+    /**
+     * Records a duration, the item is set for the round trip time of a request
+     */
+    void record(String thing, String name, @Nullable String item, long millis);
+
+    /**
+     * Sets the current value of a gauge, e.g. the number of requests in flight
+     */
+    void gauge(String thing, String name, long value);
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2010-2019 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.daikinaltherma.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.binding.daikinaltherma.MetricsSink;
+
+/**
+ * The {@link BindingMetrics} collects the metrics of one adapter and passes them on to the {@link MetricsSink}. The
+ * round trip time of requests is kept per item as well, to find the items that are slow to answer.
+ *
+ * @author Karsten Becker - Initial contribution
+ */
+@NonNullByDefault
+public class BindingMetrics {
+
+    // Counters
+    public static final String REQUESTS = "requests";
+    public static final String TIMEOUTS = "timeouts";
+    public static final String ERRORS = "errors";
+    public static final String NOT_FOUND = "notFound";
+    public static final String RECONNECTS = "reconnects";
+    public static final String REJECTED = "rejected";
+    public static final String EXPIRED = "expired";
+
+    // Gauges
+    public static final String IN_FLIGHT = "inFlight";
+
+    // Timers
+    public static final String LATENCY = "latency";
+    public static final String POLL_DURATION = "pollDuration";
+    public static final String DISCOVERY_DURATION = "discoveryDuration";
+
+    private final String thing;
+    private final MetricsSink sink;
+
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> gauges = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> timers = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> itemLatencies = new ConcurrentHashMap<>();
+    /**
+     * The last recorded value of each timer
+     */
+    private final Map<String, AtomicLong> lastDurations = new ConcurrentHashMap<>();
+
+    public BindingMetrics(String thing, MetricsSink sink) {
+        this.thing = thing;
+        this.sink = sink;
+    }
+
+    public void increment(String name) {
+        counters.computeIfAbsent(name, k -> new LongAdder()).increment();
+        sink.increment(thing, name);
+    }
+
+    public void gauge(String name, long value) {
+        gauges.computeIfAbsent(name, k -> new AtomicLong()).set(value);
+        sink.gauge(thing, name, value);
+    }
+
+    public void record(String name, @Nullable String item, long millis) {
+        timers.computeIfAbsent(name, k -> new LatencyHistogram()).record(millis);
+        lastDurations.computeIfAbsent(name, k -> new AtomicLong()).set(millis);
+        if (item != null)
+            itemLatencies.computeIfAbsent(item, k -> new LatencyHistogram()).record(millis);
+        sink.record(thing, name, item, millis);
+    }
+
+    public long getCount(String name) {
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    public long getGauge(String name) {
+        AtomicLong gauge = gauges.get(name);
+        return gauge == null ? 0 : gauge.get();
+    }
+
+    /**
+     * Returns the last recorded duration of the timer
+     */
+    public long getLast(String name) {
+        AtomicLong last = lastDurations.get(name);
+        return last == null ? 0 : last.get();
+    }
+
+    public LatencyHistogram getTimer(String name) {
+        return timers.computeIfAbsent(name, k -> new LatencyHistogram());
+    }
+
+    /**
+     * Returns the items with the highest 95th percentile of their round trip time, slowest first
+     */
+    public List<Entry<String, LatencyHistogram>> getSlowestItems(int limit) {
+        List<Entry<String, LatencyHistogram>> items = new ArrayList<>(itemLatencies.entrySet());
+        Collections.sort(items,
+                (a, b) -> Long.compare(b.getValue().getPercentile(95), a.getValue().getPercentile(95)));
+        return items.subList(0, Math.min(limit, items.size()));
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2010-2019 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.daikinaltherma.internal;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.smarthome.core.thing.ChannelUID;
+import org.eclipse.smarthome.core.types.Command;
+
+/**
+ * The {@link ChangeIndex} remembers the state tag (st) and last modified time (lt) of the last value that was
+ * published for each channel. Every content instance of the adapter carries both, so an unchanged value can be
+ * recognized without looking at its content. The content is kept as well, commands are written in the same format.
+ * <p>
+ * The commands the binding posts for values it read come back to it from the event bus. They are remembered, so
+ * these echoes can be told apart from commands of the user and are not written back to the adapter.
+ *
+ * @author Karsten Becker - Initial contribution
+ */
+@NonNullByDefault
+public class ChangeIndex {
+
+    /**
+     * The state tag of a marker that was invalidated, the adapter never sends it
+     */
+    private static final long INVALID = Long.MIN_VALUE;
+
+    /**
+     * The number of posted commands per channel whose echo is expected, older ones are forgotten
+     */
+    private static final int MAX_ECHOES = 8;
+
+    private static class Marker {
+        final long stateTag;
+        final @Nullable String lastModified;
+        final @Nullable String content;
+
+        Marker(long stateTag, @Nullable String lastModified, @Nullable String content) {
+            this.stateTag = stateTag;
+            this.lastModified = lastModified;
+            this.content = content;
+        }
+
+        boolean matches(long stateTag, @Nullable String lastModified) {
+            return this.stateTag == stateTag
+                    && (this.lastModified == null ? lastModified == null : this.lastModified.equals(lastModified));
+        }
+    }
+
+    private final Map<ChannelUID, Marker> lastSeen = new ConcurrentHashMap<>();
+
+    /**
+     * Guarded by itself
+     */
+    private final Map<ChannelUID, Deque<Command>> posted = new ConcurrentHashMap<>();
+
+    /**
+     * Records the state tag, modification time and content for the channel. Returns false if the state tag and
+     * modification time are the same as last time.
+     */
+    public boolean update(ChannelUID channel, long stateTag, @Nullable String lastModified,
+            @Nullable String content) {
+        Marker previous = lastSeen.get(channel);
+        if (previous != null && previous.matches(stateTag, lastModified))
+            return false;
+        lastSeen.put(channel, new Marker(stateTag, lastModified, content));
+        return true;
+    }
+
+    /**
+     * Returns the content of the last value of the channel, null if there is none
+     */
+    public @Nullable String getContent(ChannelUID channel) {
+        Marker marker = lastSeen.get(channel);
+        return marker == null ? null : marker.content;
+    }
+
+    /**
+     * Forgets the state tag and modification time of the channel, so that the next value is published in any case.
+     * The content is kept.
+     */
+    public void invalidate(ChannelUID channel) {
+        lastSeen.computeIfPresent(channel, (k, marker) -> new Marker(INVALID, null, marker.content));
+    }
+
+    /**
+     * Remembers a command the binding posted to the channel
+     */
+    public void posted(ChannelUID channel, Command command) {
+        synchronized (posted) {
+            Deque<Command> commands = posted.computeIfAbsent(channel, k -> new ArrayDeque<>());
+            if (commands.size() >= MAX_ECHOES)
+                commands.removeFirst();
+            commands.addLast(command);
+        }
+    }
+
+    /**
+     * Returns true if the command is the echo of a command the binding posted to the channel. Each posted command
+     * matches one echo.
+     */
+    public boolean isEcho(ChannelUID channel, Command command) {
+        synchronized (posted) {
+            Deque<Command> commands = posted.get(channel);
+            return commands != null && commands.removeFirstOccurrence(command);
+        }
+    }
+
+    public void clear() {
+        lastSeen.clear();
+        synchronized (posted) {
+            posted.clear();
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/**
+ * Copyright (c) 2010-2019 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.daikinaltherma.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link ChannelDiscovery} finds the items of an adapter. The units below the MNAE node are probed, the items of
+ * each unit are derived from the structure of its UnitProfile without retrieving them. Whether an item really
+ * provides a value is only found out once its channel is linked. The result is ordered by unit and by the position
+ * of the item in the UnitProfile, so it does not depend on the order in which the replies arrive.
+ * <p>
+ * When the result of a previous discovery is given, only the units whose UnitProfile changed are probed again.
+ *
+ * @author Karsten Becker - Initial contribution
+ */
+@NonNullByDefault
+public class ChannelDiscovery {
+
+    static final String ITEM_SEP = "/";
+
+    /**
+     * Groups of the UnitProfile whose children are the items, all other groups are an item themselves
+     */
+    private static final Set<String> CONTAINER_GROUPS = new HashSet<>(
+            Arrays.asList("Sensor", "UnitStatus", "Operation", "Holiday", "ChildLock", "UnitInfo", "UnitIdentifier"));
+
+    /**
+     * Groups of the UnitProfile that don't provide a value
+     */
+    private static final Set<String> IGNORED_GROUPS = Collections.singleton("Schedule");
+
+    /**
+     * An item listed in the UnitProfile of a unit. It was not retrieved, so it may turn out not to provide a value.
+     */
+    public static class DiscoveredItem {
+        public final String group;
+        public final String item;
+        public final ValueType type;
+
+        DiscoveredItem(String group, String item, ValueType type) {
+            this.group = group;
+            this.item = item;
+            this.type = type;
+        }
+
+        /**
+         * Returns the index of the unit below the MNAE node the item belongs to
+         */
+        String getUnit() {
+            int sep = item.indexOf(ITEM_SEP);
+            return sep < 0 ? item : item.substring(0, sep);
+        }
+
+        @Override
+        public boolean equals(@Nullable Object obj) {
+            if (!(obj instanceof DiscoveredItem))
+                return false;
+            DiscoveredItem other = (DiscoveredItem) obj;
+            return group.equals(other.group) && item.equals(other.item) && type == other.type;
+        }
+
+        @Override
+        public int hashCode() {
+            return item.hashCode();
+        }
+    }
+
+    private static class Unit {
+        final int index;
+        final String group;
+
+        Unit(int index, String group) {
+            this.index = index;
+            this.group = group;
+        }
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(ChannelDiscovery.class);
+
+    private final WebsocketHelper helper;
+
+    /**
+     * The number of unit indices that are probed at once
+     */
+    private final int batchSize;
+
+    /**
+     * The UnitProfiles and items of the previous discovery, by unit index
+     */
+    private final Map<String, String> previousProfiles = new HashMap<>();
+    private final Map<String, List<DiscoveredItem>> previousItems = new HashMap<>();
+
+    /**
+     * The UnitProfiles that were retrieved, by unit index
+     */
+    private final Map<String, String> profiles = new ConcurrentHashMap<>();
+
+    public ChannelDiscovery(WebsocketHelper helper, int batchSize) {
+        this.helper = helper;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Reuses the items of the units whose UnitProfile is the same as in the previous discovery
+     */
+    public ChannelDiscovery withPrevious(Map<String, String> profiles, List<DiscoveredItem> items) {
+        previousProfiles.putAll(profiles);
+        for (DiscoveredItem item : items) {
+            previousItems.computeIfAbsent(item.getUnit(), k -> new ArrayList<>()).add(item);
+        }
+        return this;
+    }
+
+    /**
+     * Returns the UnitProfile content of every unit, once the discovery is complete
+     */
+    public Map<String, String> getProfiles() {
+        return new TreeMap<>(profiles);
+    }
+
+    /**
+     * Discovers all items of the adapter. The future completes exceptionally if the units or their UnitProfile
+     * could not be retrieved.
+     */
+    public CompletableFuture<List<DiscoveredItem>> discover() {
+        return findUnits(0, new ArrayList<>()).thenCompose(units -> {
+            List<CompletableFuture<List<DiscoveredItem>>> walks = new ArrayList<>();
+            for (Unit unit : units) {
+                walks.add(helper.query(unit.index + "/UnitProfile/la", RequestPriority.DISCOVERY).thenApply(rsp -> {
+                    String profile = rsp.getContent();
+                    if (profile == null)
+                        throw new CompletionException(new IOException("No UnitProfile for unit " + unit.index));
+                    logger.debug("Profile:" + profile);
+                    String index = Integer.toString(unit.index);
+                    profiles.put(index, profile);
+                    List<DiscoveredItem> previous = previousItems.get(index);
+                    if (previous != null && profile.equals(previousProfiles.get(index))) {
+                        logger.debug("UnitProfile of unit " + index + " is unchanged, keeping its items");
+                        List<DiscoveredItem> items = new ArrayList<>();
+                        for (DiscoveredItem item : previous) {
+                            items.add(new DiscoveredItem(unit.group, item.item, item.type));
+                        }
+                        return items;
+                    }
+                    return readProfile(unit, profile);
+                }));
+            }
+            return CompletableFuture.allOf(walks.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+                List<DiscoveredItem> result = new ArrayList<>();
+                for (CompletableFuture<List<DiscoveredItem>> walk : walks) {
+                    result.addAll(walk.join());
+                }
+                return result;
+            });
+        });
+    }
+
+    /**
+     * Probes the unit indices starting at first in batches until the first one that does not exist
+     */
+    private CompletableFuture<List<Unit>> findUnits(int first, List<Unit> found) {
+        List<String> batch = new ArrayList<>();
+        for (int i = first; i < first + batchSize; i++) {
+            batch.add(Integer.toString(i));
+        }
+        return helper.queryAll(batch, RequestPriority.DISCOVERY).thenCompose(results -> {
+            for (int i = first; i < first + batchSize; i++) {
+                Optional<M2mResponse> obj = results.get(Integer.toString(i));
+                if (obj == null || !obj.isPresent())
+                    throw new CompletionException(new IOException("No reply for unit " + i));
+                // {"m2m:rsp":{"rsc":4004,"rqi":"1c3ac0b7592824ee","to":"/OpenHab","fr":"/[0]/MNAE/3/la"}}
+                if (!obj.get().isOk())
+                    return CompletableFuture.completedFuture(found);
+                String groupName = Integer.toString(i);
+                String label = obj.get().getLabel();
+                if (label != null)
+                    groupName = label.substring(label.indexOf("/") + 1);
+                found.add(new Unit(i, groupName));
+            }
+            return findUnits(first + batchSize, found);
+        });
+    }
+
+    private List<DiscoveredItem> readProfile(Unit unit, String profile) {
+        Map<String, JsonElement> candidates = new LinkedHashMap<>();
+        try {
+            collectItems(new JsonParser().parse(profile), Integer.toString(unit.index), candidates);
+        } catch (JsonParseException e) {
+            throw new CompletionException(new IOException("Invalid UnitProfile for unit " + unit.index, e));
+        }
+        List<DiscoveredItem> items = new ArrayList<>();
+        for (Entry<String, JsonElement> candidate : candidates.entrySet()) {
+            ValueType type = inferType(candidate.getKey(), candidate.getValue());
+            logger.debug("Found channel:" + candidate.getKey() + " of type " + type);
+            items.add(new DiscoveredItem(unit.group, candidate.getKey(), type));
+        }
+        return items;
+    }
+
+    /**
+     * Collects the path and profile node of every item of the UnitProfile of a unit, in the order of the profile.
+     * The groups listed as array, like Sensor or UnitStatus, and the known container groups, like Operation, consist
+     * of items. Every other group is an item.
+     */
+    static void collectItems(JsonElement profile, String unit, Map<String, JsonElement> items) {
+        if (!profile.isJsonObject())
+            return;
+        for (Entry<String, JsonElement> group : profile.getAsJsonObject().entrySet()) {
+            String name = group.getKey();
+            JsonElement node = group.getValue();
+            String path = unit + ITEM_SEP + name;
+            if (IGNORED_GROUPS.contains(name))
+                continue;
+            if (node.isJsonArray()) {
+                for (JsonElement child : node.getAsJsonArray()) {
+                    if (child.isJsonPrimitive())
+                        items.putIfAbsent(path + ITEM_SEP + child.getAsString(), child);
+                }
+            } else if (node.isJsonObject() && CONTAINER_GROUPS.contains(name)) {
+                for (Entry<String, JsonElement> child : node.getAsJsonObject().entrySet()) {
+                    items.putIfAbsent(path + ITEM_SEP + child.getKey(), child.getValue());
+                }
+            } else {
+                items.putIfAbsent(path, node);
+            }
+        }
+    }
+
+    /**
+     * Infers the type of the value of an item from its path and its node in the UnitProfile. Nodes with a value
+     * range are numbers, the states of UnitStatus and nodes with the values on and standby (or 0 and 1) are
+     * switches.
+     */
+    static ValueType inferType(String item, JsonElement node) {
+        String[] path = item.split(ITEM_SEP);
+        String name = path[path.length - 1];
+        String parent = path.length > 1 ? path[path.length - 2] : "";
+        if ("UnitStatus".equals(parent))
+            return ValueType.SWITCH;
+        if ("DateTime".equals(name))
+            return ValueType.DATETIME;
+        if (node.isJsonArray() && isSwitch(node.getAsJsonArray()))
+            return ValueType.SWITCH;
+        if ("Sensor".equals(parent) || hasRange(node))
+            return name.contains("Temperature") ? ValueType.TEMPERATURE : ValueType.NUMBER;
+        return ValueType.STRING;
+    }
+
+    private static boolean isSwitch(JsonArray values) {
+        if (values.size() != 2)
+            return false;
+        Set<String> names = new HashSet<>();
+        for (JsonElement value : values) {
+            if (!value.isJsonPrimitive())
+                return false;
+            names.add(value.getAsString().toLowerCase());
+        }
+        return names.contains("on") || (names.contains("0") && names.contains("1"));
+    }
+
+    /**
+     * Returns true if the node, or one of its operation modes, has a maxValue
+     */
+    private static boolean hasRange(JsonElement node) {
+        if (!node.isJsonObject())
+            return false;
+        JsonObject obj = node.getAsJsonObject();
+        if (obj.has("maxValue"))
+            return true;
+        for (String key : obj.keySet()) {
+            if (hasRange(obj.get(key)))
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2010-2019 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.daikinaltherma.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The {@link CommandWriter} coalesces the values written to an item. A value is held back for a short delay, when
+ * another value for the same item arrives in the meantime it replaces the first one. While a write to an item is
+ * waiting for its reply, new values wait as well. So a slider that sends many values only causes a few writes, and
+ * the last value always wins.
+ *
+ * @author Karsten Becker - Initial contribution
+ */
+@NonNullByDefault
+public class CommandWriter {
+
+    public static final long DEFAULT_DELAY_MILLIS = 250;
+
+    private static class ItemWrite {
+        /**
+         * The value to be written next and the future of everyone who asked for a value since the last write
+         */
+        @Nullable
+        String value;
+        @Nullable
+        CompletableFuture<M2mResponse> waiting;
+        /**
+         * A write is scheduled or waiting for its reply
+         */
+        boolean busy;
+    }
+
+    private final WebsocketHelper helper;
+    private final ScheduledExecutorService scheduler;
+    private final long delayMillis;
+
+    /**
+     * Guarded by this
+     */
+    private final Map<String, ItemWrite> writes = new HashMap<>();
+
+    public CommandWriter(WebsocketHelper helper, ScheduledExecutorService scheduler, long delayMillis) {
+        this.helper = helper;
+        this.scheduler = scheduler;
+        this.delayMillis = delayMillis;
+    }
+
+    /**
+     * Writes the value to the item after the delay, unless a newer value replaces it. The future completes with the
+     * reply to the write that carried this value or the one that replaced it.
+     */
+    public synchronized CompletableFuture<M2mResponse> write(String item, String value) {
+        ItemWrite write = writes.computeIfAbsent(item, k -> new ItemWrite());
+        write.value = value;
+        CompletableFuture<M2mResponse> future = write.waiting;
+        if (future == null) {
+            future = new CompletableFuture<>();
+            write.waiting = future;
+        }
+        if (!write.busy) {
+            write.busy = true;
+            scheduler.schedule(() -> flush(item), delayMillis, TimeUnit.MILLISECONDS);
+        }
+        return future;
+    }
+
+    private void flush(String item) {
+        String value;
+        CompletableFuture<M2mResponse> future;
+        synchronized (this) {
+            ItemWrite write = writes.get(item);
+            if (write == null)
+                return;
+            value = write.value;
+            future = write.waiting;
+            write.value = null;
+            write.waiting = null;
+            if (value == null || future == null) {
+                writes.remove(item);
+                return;
+            }
+        }
+        helper.write(item, value).whenComplete((rsp, e) -> {
+            if (e != null)
+                future.completeExceptionally(e);
+            else
+                future.complete(rsp);
+            // Values that arrived during the write go out right away, they already waited
+            flush(item);
+        });
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright (c) 2010-2019 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.daikinaltherma.internal;
+
+import static org.openhab.binding.daikinaltherma.internal.ChannelDiscovery.ITEM_SEP;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * The {@link ConsumptionHistory} decodes the content of a Consumption container into arrays of primitive buckets.
+ * Each series, like the electrical energy used for heating, has three arrays: D holds yesterday and today in two hour
+ * buckets, W last week and this week in days and M last year and this year in months. The first half of each array
+ * is the previous period, the second half the current one. Buckets in the future are null and decoded as NaN.
+ *
+ * @author Karsten Becker - Initial contribution
+ */
+@NonNullByDefault
+public class ConsumptionHistory {
+
+    static final String CONSUMPTION = "Consumption";
+
+    /**
+     * The totals that are published for each series
+     */
+    public enum Period {
+        TODAY("today", "D", true),
+        YESTERDAY("yesterday", "D", false),
+        THIS_WEEK("thisWeek", "W", true),
+        LAST_WEEK("lastWeek", "W", false),
+        THIS_YEAR("thisYear", "M", true),
+        LAST_YEAR("lastYear", "M", false);
+
+        private final String id;
+        private final String array;
+        private final boolean current;
+
+        private Period(String id, String array, boolean current) {
+            this.id = id;
+            this.array = array;
+            this.current = current;
+        }
+
+        public String getId() {
+            return id;
+        }
+    }
+
+    /**
+     * The buckets by the path of their array, e.g. Electrical/Heating/D
+     */
+    private final Map<String, double[]> buckets = new HashMap<>();
+
+    private ConsumptionHistory() {
+    }
+
+    /**
+     * Decodes the con of a Consumption container. Throws an IOException if it is not a JSON object.
+     */
+    public static ConsumptionHistory decode(String content) throws IOException {
+        ConsumptionHistory history = new ConsumptionHistory();
+        try (JsonReader reader = new JsonReader(new StringReader(content))) {
+            history.readObject(reader, "");
+        } catch (NumberFormatException | IllegalStateException e) {
+            throw new IOException("Unexpected consumption: " + e.getMessage(), e);
+        }
+        return history;
+    }
+
+    private void readObject(JsonReader reader, String path) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            String child = path.isEmpty() ? name : path + ITEM_SEP + name;
+            JsonToken token = reader.peek();
+            if (token == JsonToken.BEGIN_OBJECT)
+                readObject(reader, child);
+            else if (token == JsonToken.BEGIN_ARRAY)
+                buckets.put(child, readBuckets(reader));
+            else
+                reader.skipValue();
+        }
+        reader.endObject();
+    }
+
+    private static double[] readBuckets(JsonReader reader) throws IOException {
+        double[] values = new double[24];
+        int size = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            if (reader.peek() == JsonToken.NUMBER) {
+                values[size++] = reader.nextDouble();
+            } else {
+                reader.skipValue();
+                values[size++] = Double.NaN;
+            }
+        }
+        reader.endArray();
+        return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Returns the buckets of an array of the series, e.g. D of Electrical/Heating, or an empty array
+     */
+    public double[] getBuckets(String series, String array) {
+        double[] values = buckets.get(series + ITEM_SEP + array);
+        return values == null ? new double[0] : values;
+    }
+
+    /**
+     * Returns the sum of the buckets of the period, NaN if none of them has a value
+     */
+    public double getTotal(String series, Period period) {
+        double[] values = getBuckets(series, period.array);
+        int half = values.length / 2;
+        int from = period.current ? half : 0;
+        int to = period.current ? values.length : half;
+        double total = 0;
+        boolean found = false;
+        for (int i = from; i < to; i++) {
+            if (!Double.isNaN(values[i])) {
+                total += values[i];
+                found = true;
+            }
+        }
+        return found ? total : Double.NaN;
+    }
+
+    /**
+     * Returns the series listed in the Consumption group of a UnitProfile, e.g. Electrical/Heating. These are the
+     * objects that describe Daily, Weekly or Monthly buckets.
+     */
+    public static List<String> seriesOf(String profile) {
+        try {
+            JsonElement root = new JsonParser().parse(profile);
+            if (!root.isJsonObject() || !root.getAsJsonObject().has(CONSUMPTION))
+                return Collections.emptyList();
+            List<String> series = new ArrayList<>();
+            collectSeries(root.getAsJsonObject().get(CONSUMPTION), "", series);
+            return series;
+        } catch (JsonParseException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    private static void collectSeries(JsonElement node, String path, List<String> series) {
+        if (!node.isJsonObject())
+            return;
+        JsonObject obj = node.getAsJsonObject();
+        if (obj.has("Daily") || obj.has("Weekly") || obj.has("Monthly")) {
+            series.add(path);
+            return;
+        }
+        for (Entry<String, JsonElement> child : obj.entrySet()) {
+            collectSeries(child.getValue(), path.isEmpty() ? child.getKey() : path + ITEM_SEP + child.getKey(), series);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2010-2019 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.daikinaltherma.internal;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The {@link ContainerSync} reads items with a large content, like the consumption history, only when they changed.
+ * The container of the item is retrieved first, which is small. Its latest content instance is only fetched if the
+ * state tag or modification time of the container differ from the last fetch, otherwise the last one is returned.
+ *
+ * @author Karsten Becker - Initial contribution
+ */
+@NonNullByDefault
+public class ContainerSync {
+
+    private static class Synced {
+        final String tag;
+        final M2mResponse latest;
+
+        Synced(String tag, M2mResponse latest) {
+            this.tag = tag;
+            this.latest = latest;
+        }
+    }
+
+    private final WebsocketHelper helper;
+
+    private final Map<String, Synced> synced = new ConcurrentHashMap<>();
+
+    public ContainerSync(WebsocketHelper helper) {
+        this.helper = helper;
+    }
+
+    /**
+     * Returns the latest content instance of the item. If the adapter doesn't report the state of the container, the
+     * content instance is fetched every time.
+     */
+    public CompletableFuture<M2mResponse> latest(String item) {
+        return helper.query(item, RequestPriority.POLL).thenCompose(container -> {
+            String tag = tagOf(container);
+            Synced last = synced.get(item);
+            if (tag != null && last != null && tag.equals(last.tag))
+                return CompletableFuture.completedFuture(last.latest);
+            return helper.query(item + "/la", RequestPriority.POLL).thenApply(rsp -> {
+                if (tag != null && rsp.hasContentInstance())
+                    synced.put(item, new Synced(tag, rsp));
+                return rsp;
+            });
+        });
+    }
+
+    private static @Nullable String tagOf(M2mResponse container) {
+        if (!container.isOk() || container.hasContentInstance() || container.getStateTag() < 0)
+            return null;
+        return container.getStateTag() + "/" + container.getLastModified();
+    }
+
+    public void reset() {
+        synced.clear();
+    }
+}
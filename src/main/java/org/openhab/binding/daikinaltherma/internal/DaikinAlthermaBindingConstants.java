@@ -15,6 +15,7 @@ package org.openhab.binding.daikinaltherma.internal;
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.smarthome.core.thing.ThingTypeUID;
 import org.eclipse.smarthome.core.thing.type.ChannelGroupTypeUID;
+import org.eclipse.smarthome.core.thing.type.ChannelTypeUID;
 
 /**
  * The {@link DaikinAlthermaBindingConstants} class defines common constants, which are
@@ -38,5 +39,17 @@ public class DaikinAlthermaBindingConstants {
     // List of all Channel ids
     public static final String CHANNEL_1 = "channel1";
 
+    // List of all Channel types
+    public static final ChannelTypeUID CHANNEL_TYPE_NUMBER = new ChannelTypeUID(BINDING_ID, "number");
+    public static final ChannelTypeUID CHANNEL_TYPE_TEMPERATURE = new ChannelTypeUID(BINDING_ID, "temperature");
+    public static final ChannelTypeUID CHANNEL_TYPE_SWITCH = new ChannelTypeUID(BINDING_ID, "switch");
+    public static final ChannelTypeUID CHANNEL_TYPE_DATETIME = new ChannelTypeUID(BINDING_ID, "datetime");
+    public static final ChannelTypeUID CHANNEL_TYPE_STRING = new ChannelTypeUID(BINDING_ID, "string");
+    public static final ChannelTypeUID CHANNEL_TYPE_RATE = new ChannelTypeUID(BINDING_ID, "rate");
+    public static final ChannelTypeUID CHANNEL_TYPE_ENERGY = new ChannelTypeUID(BINDING_ID, "energy");
+    public static final ChannelTypeUID CHANNEL_TYPE_METRIC_COUNT = new ChannelTypeUID(BINDING_ID, "metric-count");
+    public static final ChannelTypeUID CHANNEL_TYPE_METRIC_DURATION = new ChannelTypeUID(BINDING_ID,
+            "metric-duration");
+
     public static final ChannelGroupTypeUID CHANNEL_GROUP = new ChannelGroupTypeUID(BINDING_ID, "top-level-group");
 }
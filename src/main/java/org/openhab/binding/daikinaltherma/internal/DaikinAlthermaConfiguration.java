@@ -33,4 +33,54 @@ public class DaikinAlthermaConfiguration {
      */
     public int interval=60;
 
+    /**
+     * The longest polling interval in seconds for values that don't change
+     */
+    public int maxInterval=600;
+
+    /**
+     * Fixed polling intervals for some items, e.g. <code>Sensor/IndoorTemperature=30,UnitInfo/UnitType=3600</code>
+     */
+    public String itemIntervals="";
+
+    /**
+     * The number of requests that are sent to the adapter without waiting for their reply
+     */
+    public int maxInFlight=WebsocketHelper.DEFAULT_MAX_IN_FLIGHT;
+
+    /**
+     * The time in minutes between checks whether the UnitProfiles changed, 0 disables them
+     */
+    public int rediscoveryInterval=1440;
+
+    /**
+     * The time in seconds a value that was read answers refreshes of its channel, 0 disables the cache
+     */
+    public int cacheTtl=5;
+
+    /**
+     * The number of recent values kept per numeric channel for the aggregate channels, 0 disables them
+     */
+    public int historySize=0;
+
+    /**
+     * Ignore the cached channels and discover them again
+     */
+    public boolean forceDiscovery=false;
+
+    /**
+     * Subscribe to the linked items and let the adapter push new values, polling is only used as fallback
+     */
+    public boolean pushMode=false;
+
+    /**
+     * Post new values as commands instead of state updates
+     */
+    public boolean postCommands=true;
+
+    /**
+     * Record the replies of the adapter to the user data folder
+     */
+    public boolean recordTraffic=false;
+
 }
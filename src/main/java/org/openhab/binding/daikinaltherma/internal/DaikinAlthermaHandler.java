@@ -12,37 +12,45 @@
  */
 package org.openhab.binding.daikinaltherma.internal;
 
+import static org.openhab.binding.daikinaltherma.internal.ChannelDiscovery.ITEM_SEP;
+import static org.openhab.binding.daikinaltherma.internal.DaikinAlthermaBindingConstants.*;
+
+import java.io.IOException;
 import java.net.URI;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.eclipse.jdt.annotation.Nullable;
-import org.eclipse.smarthome.core.library.types.StringType;
+import org.eclipse.smarthome.core.library.types.DecimalType;
+import org.eclipse.smarthome.core.library.types.QuantityType;
+import org.eclipse.smarthome.core.library.unit.SmartHomeUnits;
 import org.eclipse.smarthome.core.thing.Channel;
 import org.eclipse.smarthome.core.thing.ChannelGroupUID;
 import org.eclipse.smarthome.core.thing.ChannelUID;
 import org.eclipse.smarthome.core.thing.Thing;
 import org.eclipse.smarthome.core.thing.ThingStatus;
+import org.eclipse.smarthome.core.thing.ThingStatusDetail;
 import org.eclipse.smarthome.core.thing.binding.BaseThingHandler;
 import org.eclipse.smarthome.core.thing.binding.builder.ChannelBuilder;
 import org.eclipse.smarthome.core.thing.binding.builder.ThingBuilder;
-import org.eclipse.smarthome.core.thing.type.ChannelGroupType;
-import org.eclipse.smarthome.core.thing.type.ChannelGroupTypeBuilder;
-import org.eclipse.smarthome.core.thing.type.ChannelGroupTypeUID;
+import org.eclipse.smarthome.core.thing.type.ChannelTypeUID;
 import org.eclipse.smarthome.core.types.Command;
 import org.eclipse.smarthome.core.types.RefreshType;
+import org.eclipse.smarthome.core.types.State;
+import org.eclipse.smarthome.core.types.UnDefType;
+import org.openhab.binding.daikinaltherma.MetricsSink;
+import org.openhab.binding.daikinaltherma.internal.ChannelDiscovery.DiscoveredItem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -52,23 +60,133 @@ import org.slf4j.LoggerFactory;
  *
  * @author Karsten Becker - Initial contribution
  */
-public class DaikinAlthermaHandler extends BaseThingHandler {
+public class DaikinAlthermaHandler extends BaseThingHandler
+        implements SessionManager.StatusListener, WebsocketHelper.NotificationListener {
+
+    /**
+     * The scheduler checks which items are due with this period
+     */
+    private static final long TICK_MILLIS = 1000;
 
-    private static final String ITEM_SEP = "/";
+    private static final long METRICS_SECONDS = 30;
+
+    static final String METRICS_GROUP = "metrics";
+
+    /**
+     * The read-only channels of the metrics group and their channel type
+     */
+    private static final Map<String, ChannelTypeUID> METRIC_CHANNELS = new LinkedHashMap<>();
+    static {
+        METRIC_CHANNELS.put(BindingMetrics.REQUESTS, CHANNEL_TYPE_METRIC_COUNT);
+        METRIC_CHANNELS.put(BindingMetrics.TIMEOUTS, CHANNEL_TYPE_METRIC_COUNT);
+        METRIC_CHANNELS.put(BindingMetrics.ERRORS, CHANNEL_TYPE_METRIC_COUNT);
+        METRIC_CHANNELS.put(BindingMetrics.NOT_FOUND, CHANNEL_TYPE_METRIC_COUNT);
+        METRIC_CHANNELS.put(BindingMetrics.RECONNECTS, CHANNEL_TYPE_METRIC_COUNT);
+        METRIC_CHANNELS.put(BindingMetrics.IN_FLIGHT, CHANNEL_TYPE_METRIC_COUNT);
+        METRIC_CHANNELS.put("latencyAverage", CHANNEL_TYPE_METRIC_DURATION);
+        METRIC_CHANNELS.put("latency95", CHANNEL_TYPE_METRIC_DURATION);
+        METRIC_CHANNELS.put("latencyMax", CHANNEL_TYPE_METRIC_DURATION);
+        METRIC_CHANNELS.put(BindingMetrics.POLL_DURATION, CHANNEL_TYPE_METRIC_DURATION);
+        METRIC_CHANNELS.put(BindingMetrics.DISCOVERY_DURATION, CHANNEL_TYPE_METRIC_DURATION);
+    }
+
+    /**
+     * The aggregates of the recent values of a numeric channel, each has a channel with this suffix
+     */
+    private static final String HISTORY_AVERAGE = "average";
+    private static final String HISTORY_MINIMUM = "minimum";
+    private static final String HISTORY_MAXIMUM = "maximum";
+    private static final String HISTORY_RATE = "rate";
 
     private final Logger logger = LoggerFactory.getLogger(DaikinAlthermaHandler.class);
 
     private @Nullable DaikinAlthermaConfiguration config;
 
-    private Map<ChannelUID, String> channelToItem = new HashMap<>();
+    private volatile Map<ChannelUID, String> channelToItem = new ConcurrentHashMap<>();
+
+    private volatile Map<String, ChannelUID> itemToChannel = new ConcurrentHashMap<>();
+
+    private volatile Map<ChannelUID, ValueType> channelTypes = new ConcurrentHashMap<>();
+
+    /**
+     * The channels of items that are linked, only these are polled
+     */
+    private final Set<ChannelUID> linkedChannels = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The channels whose item is listed in the UnitProfile but doesn't exist on the adapter
+     */
+    private final Set<ChannelUID> invalidChannels = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The recent values of the numeric channels, if the history is enabled
+     */
+    private volatile Map<ChannelUID, ValueHistory> histories = new ConcurrentHashMap<>();
+
+    private volatile ResponseCache responses = new ResponseCache(0);
+
+    /**
+     * The series of the Consumption items, e.g. Electrical/Heating, by item
+     */
+    private volatile Map<String, List<String>> consumptionSeries = new ConcurrentHashMap<>();
+
+    private final ContainerSync containers;
+
+    private @Nullable ScheduledFuture<?> task;
+
+    private final @Nullable PollingCoordinator coordinator;
 
-    private ScheduledFuture<?> task;
+    private PollingCoordinator.@Nullable Registration registration;
+
+    private ScheduledFuture<?> metricsTask;
+
+    private @Nullable ScheduledFuture<?> rediscoveryTask;
+
+    private final BindingMetrics metrics;
+
+    private @Nullable TrafficRecorder recorder;
 
     private WebsocketHelper webSocketClient;
 
+    private @Nullable SessionManager session;
+
+    private volatile boolean discovered = false;
+
+    private @Nullable CompletableFuture<Boolean> discovery;
+
+    private @Nullable DiscoveryCache cache;
+
+    private final AtomicBoolean polling = new AtomicBoolean();
+
+    private final SubscriptionManager subscriptions;
+
+    private final CommandWriter writer;
+
+    private final ChangeIndex changes = new ChangeIndex();
+
+    private @Nullable PollScheduler pollScheduler;
+
     public DaikinAlthermaHandler(Thing thing, WebsocketHelper webSocketClient) {
+        this(thing, webSocketClient, MetricsSink.NONE);
+    }
+
+    public DaikinAlthermaHandler(Thing thing, WebsocketHelper webSocketClient, MetricsSink metricsSink) {
+        this(thing, webSocketClient, metricsSink, null);
+    }
+
+    /**
+     * Polls through the coordinator of the binding if one is given, otherwise on the scheduler of the handler
+     */
+    public DaikinAlthermaHandler(Thing thing, WebsocketHelper webSocketClient, MetricsSink metricsSink,
+            @Nullable PollingCoordinator coordinator) {
         super(thing);
+        this.coordinator = coordinator;
         this.webSocketClient = webSocketClient;
+        this.subscriptions = new SubscriptionManager(webSocketClient);
+        this.containers = new ContainerSync(webSocketClient);
+        this.writer = new CommandWriter(webSocketClient, scheduler, CommandWriter.DEFAULT_DELAY_MILLIS);
+        this.metrics = new BindingMetrics(thing.getUID().getAsString(), metricsSink);
+        webSocketClient.setMetrics(metrics);
     }
 
     @Override
@@ -77,187 +195,584 @@ public class DaikinAlthermaHandler extends BaseThingHandler {
             String item = channelToItem.get(channelUID);
             logger.debug("Found "+item+" for "+channelUID+" to update");
             if (item != null) {
-                updateChannel(item, channelUID);
+                // A refresh always publishes the value, even if it didn't change
+                changes.invalidate(channelUID);
+                responses.get(item, this::readLatest).thenAccept(res -> updateChannel(res, channelUID));
             }
+        } else {
+            writeCommand(channelUID, command);
         }
     }
 
+    /**
+     * Writes the command to the item of the channel and reads the value back once the adapter accepted it
+     */
+    private void writeCommand(ChannelUID channelUID, Command command) {
+        String item = channelToItem.get(channelUID);
+        if (item == null)
+            return;
+        // Commands posted for values that were read come back here, they must not be written again
+        if (changes.isEcho(channelUID, command)) {
+            logger.trace("Ignoring " + command + " for " + channelUID + ", the binding posted it");
+            return;
+        }
+        ValueType type = channelTypes.getOrDefault(channelUID, ValueType.STRING);
+        String current = changes.getContent(channelUID);
+        String value = type.format(command, current);
+        if (value == null) {
+            logger.debug("Can't write " + command + " to " + item);
+            return;
+        }
+        writer.write(item, value).thenAccept(rsp -> {
+            if (rsp.getResponseCode() != M2mResponse.RSC_CREATED && !rsp.isOk()) {
+                logger.warn("Adapter rejected " + value + " for " + item + " with " + rsp.getResponseCode());
+                return;
+            }
+            changes.invalidate(channelUID);
+            responses.invalidate(item);
+            responses.get(item, this::readLatest)
+                    .thenAccept(res -> readOutsidePoll(item, updateChannel(res, channelUID)));
+        });
+    }
+
+    /**
+     * Schedules the next poll of an item whose value was just read, so it is not polled again right away
+     */
+    private void readOutsidePoll(String item, boolean changed) {
+        PollScheduler schedule = pollScheduler;
+        if (schedule != null)
+            schedule.polled(item, changed, subscriptions.isSubscribed(item), System.currentTimeMillis());
+    }
+
+    /**
+     * Reads the latest value of the item with the priority of a request the user is waiting for
+     */
+    private CompletableFuture<M2mResponse> readLatest(String item) {
+        return webSocketClient.query(item + "/la", RequestPriority.INTERACTIVE);
+    }
+
     @Override
     public void initialize() {
         config = getConfigAs(DaikinAlthermaConfiguration.class);
 
         updateStatus(ThingStatus.UNKNOWN);
 
-        scheduler.execute(() -> {
-            if (config != null) {
-                refineThingFromURL(config.host, config.port);
-                task = scheduler.scheduleWithFixedDelay(() -> updateChannels(config.host, config.port), 5,
-                        config.interval, TimeUnit.SECONDS);
+        if (config != null) {
+            discovered = false;
+            changes.clear();
+            invalidChannels.clear();
+            histories = new ConcurrentHashMap<>();
+            responses = new ResponseCache(TimeUnit.SECONDS.toNanos(config.cacheTtl));
+            containers.reset();
+            cache = config.forceDiscovery ? null : DiscoveryCache.load(getThing().getUID());
+            if (cache != null) {
+                // Bring up the channels right away, they are validated against the version once connected
+                applyChannels(cache.getItems(), editProperties());
             }
-        });
+            webSocketClient.setMaxInFlight(config.maxInFlight);
+            webSocketClient.setNotificationListener(config.pushMode ? this : null);
+            if (config.recordTraffic) {
+                recorder = new TrafficRecorder(TrafficRecorder.getFile(getThing().getUID()), scheduler);
+                recorder.start();
+            }
+            webSocketClient.setRecorder(recorder);
+            URI url = URI.create("ws://" + config.host + ":" + config.port + "/mca");
+            session = new SessionManager(webSocketClient, url, scheduler, this);
+            session.start();
+            long offset = 0;
+            if (coordinator != null) {
+                PollingCoordinator.Registration polls = coordinator.register(this::updateChannels, TICK_MILLIS);
+                // Adapters that start together spread their first round over the polling interval
+                offset = polls.getOffset(TimeUnit.SECONDS.toMillis(config.interval));
+                registration = polls;
+            } else {
+                task = scheduler.scheduleWithFixedDelay(this::updateChannels, 5000, TICK_MILLIS,
+                        TimeUnit.MILLISECONDS);
+            }
+            pollScheduler = new PollScheduler(config.interval, config.maxInterval,
+                    PollScheduler.parseIntervals(config.itemIntervals), offset);
+            metricsTask = scheduler.scheduleWithFixedDelay(this::publishMetrics, METRICS_SECONDS, METRICS_SECONDS,
+                    TimeUnit.SECONDS);
+            if (config.rediscoveryInterval > 0)
+                rediscoveryTask = scheduler.scheduleWithFixedDelay(this::rediscover, config.rediscoveryInterval,
+                        config.rediscoveryInterval, TimeUnit.MINUTES);
+        }
     }
 
     @Override
     public void dispose() {
         if (task != null)
             task.cancel(true);
+        if (registration != null) {
+            registration.cancel();
+            registration = null;
+        }
+        if (metricsTask != null)
+            metricsTask.cancel(true);
+        if (rediscoveryTask != null)
+            rediscoveryTask.cancel(true);
+        if (session != null)
+            session.stop();
+        webSocketClient.setRecorder(null);
+        if (recorder != null) {
+            recorder.stop();
+            recorder = null;
+        }
     }
 
-    private void updateChannels(String host, int port) {
-        URI url = URI.create("ws://" + host + ":" + port + "/mca");
-        logger.debug("Updating channels");
-        try {
-            if (!webSocketClient.connect(url))
-                return;
-            for (Channel ch : getThing().getChannels()) {
-                if (!isLinked(ch.getUID()))
-                    break;
-                String item = channelToItem.get(ch.getUID());
-                updateChannel(item, ch.getUID());
+    @Override
+    public void handleRemoval() {
+        DiscoveryCache.delete(getThing().getUID());
+        super.handleRemoval();
+    }
+
+    @Override
+    public void sessionOnline() {
+        scheduler.execute(this::ensureDiscovered);
+    }
+
+    /**
+     * Starts the discovery of the channels once the session is up. Returns true when the thing is ready to be
+     * polled.
+     */
+    private synchronized boolean ensureDiscovered() {
+        if (session == null || !session.isOnline())
+            return false;
+        if (discovered) {
+            if (getThing().getStatus() != ThingStatus.ONLINE)
+                updateStatus(ThingStatus.ONLINE);
+            return true;
+        }
+        CompletableFuture<Boolean> running = discovery;
+        if (running == null || running.isDone()) {
+            discovery = refineThingFromURL().thenApply(ok -> {
+                discovered = ok;
+                if (ok)
+                    updateStatus(ThingStatus.ONLINE);
+                else
+                    updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR,
+                            "Failed to discover the channels of the adapter");
+                return ok;
+            });
+        }
+        return false;
+    }
+
+    @Override
+    public void sessionOffline(String reason) {
+        metrics.increment(BindingMetrics.RECONNECTS);
+        subscriptions.reset();
+        updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR, reason);
+    }
+
+    /**
+     * Polls all linked items that are due in one batch, the future completes when the batch is done
+     */
+    private CompletableFuture<?> updateChannels() {
+        PollScheduler schedule = pollScheduler;
+        if (schedule == null || !ensureDiscovered())
+            return CompletableFuture.completedFuture(null);
+        if (polling.get())
+            return CompletableFuture.completedFuture(null);
+        Map<String, ChannelUID> linked = new LinkedHashMap<>();
+        for (ChannelUID uid : linkedChannels) {
+            String item = channelToItem.get(uid);
+            if (item != null && !invalidChannels.contains(uid))
+                linked.put(item, uid);
+        }
+        if (config.pushMode)
+            subscriptions.subscribe(linked.keySet());
+        List<String> due = schedule.due(linked.keySet(), System.currentTimeMillis());
+        if (due.isEmpty())
+            return CompletableFuture.completedFuture(null);
+        if (!polling.compareAndSet(false, true)) {
+            logger.debug("Previous update is still running, skipping this one");
+            return CompletableFuture.completedFuture(null);
+        }
+        logger.debug("Updating " + due.size() + " of " + linked.size() + " channels");
+        long start = System.nanoTime();
+        // The consumption history is large, it is only fetched when its container changed
+        Map<String, List<String>> consumption = consumptionSeries;
+        List<String> plain = new ArrayList<>();
+        List<String> synced = new ArrayList<>();
+        for (String item : due) {
+            (consumption.containsKey(item) ? synced : plain).add(item);
+        }
+        CompletableFuture<Map<String, Optional<M2mResponse>>> batch = webSocketClient.queryLatest(plain);
+        for (String item : synced) {
+            batch = batch.thenCombine(containers.latest(item).handle((rsp, e) -> Optional.ofNullable(rsp)),
+                    (results, rsp) -> {
+                        results.put(item, rsp);
+                        return results;
+                    });
+        }
+        return batch.thenAccept(results -> {
+            long now = System.currentTimeMillis();
+            for (String item : due) {
+                Optional<M2mResponse> res = results.get(item);
+                if (res != null && res.isPresent()) {
+                    responses.put(item, res.get());
+                    schedule.polled(item, updateChannel(res.get(), linked.get(item)),
+                            subscriptions.isSubscribed(item), now);
+                } else {
+                    schedule.failed(item, now);
+                }
             }
-        } finally {
-            webSocketClient.disconnect();
+            logger.debug("Updating done");
+        }).whenComplete((v, e) -> {
+            metrics.record(BindingMetrics.POLL_DURATION, null,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            polling.set(false);
+        });
+    }
+
+    /**
+     * Returns true if a new value was published
+     */
+    private boolean updateChannel(M2mResponse res, ChannelUID uid) {
+        if (res.getResponseCode() == M2mResponse.RSC_NOT_FOUND) {
+            // The channel was created from the UnitProfile, the adapter doesn't provide its item
+            if (invalidChannels.add(uid)) {
+                logger.info("Item of " + uid + " doesn't exist on the adapter, it is no longer polled");
+                updateState(uid, UnDefType.UNDEF);
+            }
+            return false;
         }
-        logger.debug("Updating done");
+        if (!res.hasContentInstance()) {
+            logger.warn("Expected to find a m2m:cin in " + res);
+            return false;
+        }
+        return updateValue(res, uid);
     }
 
-    private void updateChannel(String item, ChannelUID uid) {
-        Optional<JsonObject> res = webSocketClient.doQuery(item+"/la");
-        if (!res.isPresent())
+    /**
+     * Updates the channel from a m2m:cin object, which is either part of a reply or of a notification. Nothing is
+     * published if the state tag and modification time are the same as last time. Returns true if a new value was
+     * published.
+     */
+    private boolean updateValue(M2mResponse cin, ChannelUID uid) {
+        if (cin.getStateTag() >= 0
+                && !changes.update(uid, cin.getStateTag(), cin.getLastModified(), cin.getContent())) {
+            logger.trace("Value of " + uid + " is unchanged");
+            return false;
+        }
+        String valObj = cin.getContent();
+        if (valObj == null)
+            return false;
+        recordHistory(uid, cin.getStateTag(), valObj);
+        State state = channelTypes.getOrDefault(uid, ValueType.STRING).parse(valObj);
+        if (state == UnDefType.UNDEF)
+            logger.debug("Unexpected value " + valObj + " for " + uid);
+
+        if (config.postCommands && state instanceof Command) {
+            changes.posted(uid, (Command) state);
+            postCommand(uid, (Command) state);
+        } else {
+            updateState(uid, state);
+        }
+        String item = channelToItem.get(uid);
+        List<String> series = item == null ? null : consumptionSeries.get(item);
+        if (series != null)
+            publishConsumption(uid, series, valObj);
+        return true;
+    }
+
+    /**
+     * Publishes the totals of each series of the consumption history to their linked channels
+     */
+    private void publishConsumption(ChannelUID uid, List<String> series, String content) {
+        ConsumptionHistory history;
+        try {
+            history = ConsumptionHistory.decode(content);
+        } catch (IOException e) {
+            logger.debug("Unexpected consumption " + content + " for " + uid + ": " + e.getMessage());
             return;
-        Optional<JsonElement> sub = getJsonPath(res.get(), "pc", "m2m:cin", "con");
-        if (!sub.isPresent())
+        }
+        for (String name : series) {
+            for (ConsumptionHistory.Period period : ConsumptionHistory.Period.values()) {
+                ChannelUID derived = new ChannelUID(uid.getAsString() + consumptionSuffix(name, period));
+                if (!isLinked(derived))
+                    continue;
+                double total = history.getTotal(name, period);
+                updateState(derived, Double.isNaN(total) ? UnDefType.UNDEF
+                        : new QuantityType<>(total, SmartHomeUnits.KILOWATT_HOUR));
+            }
+        }
+    }
+
+    private static String consumptionSuffix(String series, ConsumptionHistory.Period period) {
+        return "_" + series.replaceAll(ITEM_SEP, "_") + "_" + period.getId();
+    }
+
+    /**
+     * Adds the channel to the polled ones and probes its item right away, so an item that doesn't exist is found out
+     * when it is linked
+     */
+    @Override
+    public void channelLinked(ChannelUID channelUID) {
+        changes.invalidate(channelUID);
+        super.channelLinked(channelUID);
+        String item = channelToItem.get(channelUID);
+        if (item == null)
             return;
-        String valObj = sub.get().getAsString();
+        linkedChannels.add(channelUID);
+        invalidChannels.remove(channelUID);
+        responses.get(item, this::readLatest).thenAccept(res -> updateChannel(res, channelUID));
+    }
 
-        postCommand(uid, new StringType(valObj));
+    @Override
+    public void channelUnlinked(ChannelUID channelUID) {
+        linkedChannels.remove(channelUID);
+        super.channelUnlinked(channelUID);
     }
 
-    private void refineThingFromURL(String host, int port) {
-        URI url = URI.create("ws://" + host + ":" + port + "/mca");
+    /**
+     * Adds one sample per new content instance to the history of the channel and publishes the aggregates to their
+     * linked channels. It is only called once the change index reported a new content instance, and the state tag
+     * keeps a content instance that is published again, e.g. on a refresh, from being counted twice.
+     */
+    private void recordHistory(ChannelUID uid, long stateTag, String content) {
+        ValueHistory history = histories.get(uid);
+        if (history == null)
+            return;
+        double value;
         try {
-            if (!webSocketClient.connect(url))
+            value = Double.parseDouble(content);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        ValueType type = channelTypes.getOrDefault(uid, ValueType.NUMBER);
+        synchronized (history) {
+            if (!history.add(System.currentTimeMillis(), value, stateTag))
                 return;
-            int code = -1;
-            int i = 0;
-            List<Channel> channels = new LinkedList<>();
-            do {
-                Optional<JsonObject> obj = webSocketClient.doQuery(Integer.toString(i));
-                if (!obj.isPresent())
-                    return;
-                code = obj.get().get("rsc").getAsInt();
-                if (code == 2000) {
-                    String groupName=Integer.toString(i);
-                    Optional<JsonElement> label = getJsonPath(obj.get(), "pc", "m2m:cnt", "lbl");
-                    if (label.isPresent() && label.get().isJsonPrimitive()){
-                        String temp=label.get().getAsString();
-                        groupName=temp.substring(temp.indexOf("/")+1);
-                    }
-                    Optional<JsonObject> res = webSocketClient.doQuery(i + "/UnitProfile/la");
-                    if (!res.isPresent())
-                        return;
-                    Optional<JsonElement> sub = getJsonPath(res.get(), "pc", "m2m:cin", "con");
-                    if (!sub.isPresent())
-                        return;
-                    String valObj = sub.get().getAsString();
-                    logger.debug("Profile:" + valObj);
-                    ChannelGroupType groupType = ChannelGroupTypeBuilder
-                            .instance(DaikinAlthermaBindingConstants.CHANNEL_GROUP, groupName)
-                            .isAdvanced(false)
-                            .withDescription("All channels of the item:"+groupName)
-                            .build();
-                        
-                    new ChannelGroupUID()
-                    createChannelsFromJSON(valObj, i, channels, group);
-                }
-                // {"m2m:rsp":{"rsc":2000,"rqi":"12e741f64af0afd2","to":"/OpenHab","fr":"/[0]/MNAE/0/la","pc":{"m2m:cin":{"rn":"0000000b","ri":"006a_0000000b","pi":"006a","ty":4,"ct":"20000000T000000Z","lt":"20000000T000000Z","st":11,"con":"{\"version\":\"v1.2.3\"}"}}}}
-                // {"m2m:rsp":{"rsc":4004,"rqi":"1c3ac0b7592824ee","to":"/OpenHab","fr":"/[0]/MNAE/3/la"}}
-                i++;
-            } while (code == 2000);
-            ThingBuilder builder = editThing();
-            builder.withChannels(channels);
-            updateThing(builder.build());
-        } finally {
-            webSocketClient.disconnect();
+            publishAggregate(uid, HISTORY_AVERAGE, type, history.getAverage());
+            publishAggregate(uid, HISTORY_MINIMUM, type, history.getMinimum());
+            publishAggregate(uid, HISTORY_MAXIMUM, type, history.getMaximum());
+            publishAggregate(uid, HISTORY_RATE, ValueType.NUMBER, history.getRatePerHour());
         }
-        updateStatus(ThingStatus.ONLINE);
     }
 
-    private Optional<JsonElement> getJsonPath(JsonObject obj, String... keys) {
-        return getJsonPath(obj, false, keys);
+    private void publishAggregate(ChannelUID uid, String aggregate, ValueType type, double value) {
+        ChannelUID derived = new ChannelUID(uid.getAsString() + "_" + aggregate);
+        if (isLinked(derived))
+            updateState(derived, Double.isNaN(value) ? UnDefType.UNDEF : type.parse(Double.toString(value)));
     }
 
-    public Optional<JsonElement> getJsonPath(JsonObject obj, boolean allowNonExist, String... keys) {
-        if (keys == null || keys.length == 0)
-            return Optional.of(obj);
-        for (int i = 0; i < keys.length; i++) {
-            String var = keys[i];
-            JsonElement sub = obj.get(var);
-            if (sub == null) {
-                if (!allowNonExist)
-                    logger.warn("Expected to find member:" + var + " in " + obj);
-                return Optional.empty();
-            }
-            if (sub.isJsonObject())
-                obj = sub.getAsJsonObject();
-            else if (i != keys.length - 1) {
-                if (!allowNonExist)
-                    logger.warn("Expected to find member:" + var + " in " + obj);
-                return Optional.empty();
+    @Override
+    public void notification(String item, M2mResponse content) {
+        ChannelUID uid = itemToChannel.get(item);
+        logger.trace("Notification for " + item + " " + content);
+        responses.put(item, content);
+        if (uid != null && isLinked(uid))
+            readOutsidePoll(item, updateValue(content, uid));
+    }
+
+    /**
+     * Reads the device info of the adapter and discovers its channels, unless the cache was created for the same
+     * firmware and software version.
+     */
+    private CompletableFuture<Boolean> refineThingFromURL() {
+        long start = System.nanoTime();
+        return webSocketClient.discover().thenCompose(rsp -> {
+            Map<String, String> description = rsp.getDeviceInfo();
+            String serial = description.getOrDefault("dlb", "");
+            String firmware = description.getOrDefault("fwv", "");
+            String software = description.getOrDefault("swv", "");
+            Map<String, String> properties = editProperties();
+            properties.put(Thing.PROPERTY_SERIAL_NUMBER, serial);
+            properties.put(Thing.PROPERTY_MODEL_ID, description.getOrDefault("mod", ""));
+            properties.put(Thing.PROPERTY_FIRMWARE_VERSION, firmware);
+            properties.put(Thing.PROPERTY_HARDWARE_VERSION, description.getOrDefault("hwv", ""));
+            properties.put(PARAM_SW_VERSION, software);
+            DiscoveryCache cached = cache;
+            if (cached != null && !config.forceDiscovery && cached.matches(serial, firmware, software)) {
+                logger.debug("Using the cached channels for firmware " + firmware + " and software " + software);
+                applyChannels(cached.getItems(), properties);
+                return CompletableFuture.completedFuture(true);
             }
-        }
-        return Optional.of(obj.get(keys[keys.length - 1]));
+            ChannelDiscovery walk = new ChannelDiscovery(webSocketClient, config.maxInFlight);
+            return walk.discover().thenApply(items -> {
+                DiscoveryCache update = new DiscoveryCache(serial, firmware, software, items, walk.getProfiles());
+                update.save(getThing().getUID());
+                cache = update;
+                applyChannels(items, properties);
+                return true;
+            });
+        }).exceptionally(e -> {
+            logger.warn("Failed to discover the channels of the adapter: " + e.getMessage());
+            return false;
+        }).whenComplete((ok, e) -> metrics.record(BindingMetrics.DISCOVERY_DURATION, null,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
     }
 
-    private void createChannelsFromJSON(String valObj, int i, List<Channel> channels, ChannelGroupUID group) {
-        JsonObject obj = new JsonParser().parse(valObj).getAsJsonObject();
-        Set<String> primitives = new HashSet<>();
-        buildChannels(obj, Integer.toString(i), channels, primitives, group);
+    /**
+     * Checks whether the UnitProfiles changed and probes the units of those that did. The channels of the other
+     * units are kept.
+     */
+    private synchronized void rediscover() {
+        DiscoveryCache cached = cache;
+        CompletableFuture<Boolean> running = discovery;
+        if (!discovered || cached == null || (running != null && !running.isDone()))
+            return;
+        long start = System.nanoTime();
+        List<DiscoveredItem> previous = cached.getItems();
+        ChannelDiscovery walk = new ChannelDiscovery(webSocketClient, config.maxInFlight)
+                .withPrevious(cached.getProfiles(), previous);
+        discovery = walk.discover().thenApply(items -> {
+            if (!items.equals(previous) || !walk.getProfiles().equals(cached.getProfiles())) {
+                logger.debug("The UnitProfiles of the adapter changed, updating the channels");
+                DiscoveryCache update = cached.withItems(items, walk.getProfiles());
+                update.save(getThing().getUID());
+                cache = update;
+                applyChannels(items, editProperties());
+            }
+            return true;
+        }).exceptionally(e -> {
+            logger.debug("Failed to check the UnitProfiles of the adapter: " + e.getMessage());
+            return true;
+        }).whenComplete((ok, e) -> metrics.record(BindingMetrics.DISCOVERY_DURATION, null,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
     }
 
-    private void buildChannels(JsonElement root, String item, List<Channel> channels, Set<String> primitives, ChannelGroupUID group) {
-        if (root.isJsonPrimitive()) {
-            item += ITEM_SEP + root.getAsString();
-            primitives.add(item);
+    /**
+     * Publishes the metrics to the linked channels of the metrics group
+     */
+    private void publishMetrics() {
+        LatencyHistogram latency = metrics.getTimer(BindingMetrics.LATENCY);
+        for (String id : METRIC_CHANNELS.keySet()) {
+            ChannelUID uid = new ChannelUID(new ChannelGroupUID(getThing().getUID(), METRICS_GROUP), id);
+            if (!isLinked(uid))
+                continue;
+            long value;
+            switch (id) {
+                case "latencyAverage":
+                    value = latency.getAverage();
+                    break;
+                case "latency95":
+                    value = latency.getPercentile(95);
+                    break;
+                case "latencyMax":
+                    value = latency.getMax();
+                    break;
+                case BindingMetrics.IN_FLIGHT:
+                    value = metrics.getGauge(id);
+                    break;
+                case BindingMetrics.POLL_DURATION:
+                case BindingMetrics.DISCOVERY_DURATION:
+                    value = metrics.getLast(id);
+                    break;
+                default:
+                    value = metrics.getCount(id);
+            }
+            updateState(uid, new DecimalType(value));
         }
-        try {
-            Optional<JsonObject> obj = webSocketClient.doQuery(item+"/la");
-            if (!obj.isPresent()) // There should be enough debug output in doQuery
-                return;
-            int code = obj.get().get("rsc").getAsInt();
-            logger.trace("Obj:" + item + " " + code + " " + obj);
-            if (code == 2000) {
-                logger.debug("Found channel:" + item);
-                if (item.length()>1) { // This drops channels that are at the root because they don't provide any
-                                   // interesting data
-                    String key = item.replaceAll(ITEM_SEP, "_");
-                    ChannelUID uid = new ChannelUID(group, key);
-                    Channel chan = ChannelBuilder.create(uid, null)//
-                            .withLabel(item.replaceAll(ITEM_SEP, " -> "))//
-                            .build();
-                    channels.add(chan);
-                    channelToItem.put(uid, item);
+        if (logger.isDebugEnabled()) {
+            for (Entry<String, LatencyHistogram> item : metrics.getSlowestItems(3)) {
+                logger.debug("Slow item " + item.getKey() + ": 95% within " + item.getValue().getPercentile(95)
+                        + "ms, max " + item.getValue().getMax() + "ms");
+            }
+        }
+    }
+
+    /**
+     * Creates a channel for each item. The thing is only updated if its channels or properties changed, and only the
+     * channels that are new, gone or of a different type are added and removed.
+     */
+    private synchronized void applyChannels(List<DiscoveredItem> items, Map<String, String> properties) {
+        List<Channel> channels = new ArrayList<>();
+        Map<ChannelUID, String> mapping = new ConcurrentHashMap<>();
+        Map<String, ChannelUID> reverse = new ConcurrentHashMap<>();
+        Map<ChannelUID, ValueType> types = new ConcurrentHashMap<>();
+        Map<ChannelUID, ValueHistory> recent = new ConcurrentHashMap<>();
+        Map<String, List<String>> consumption = new ConcurrentHashMap<>();
+        DiscoveryCache cached = cache;
+        for (DiscoveredItem discovered : items) {
+            ChannelGroupUID group = new ChannelGroupUID(getThing().getUID(), discovered.group);
+            String key = discovered.item.replaceAll(ITEM_SEP, "_");
+            ChannelUID uid = new ChannelUID(group, key);
+            String label = discovered.item.replaceAll(ITEM_SEP, " -> ");
+            Channel chan = ChannelBuilder.create(uid, discovered.type.getItemType())//
+                    .withType(discovered.type.getChannelType())//
+                    .withLabel(label)//
+                    .build();
+            channels.add(chan);
+            mapping.put(uid, discovered.item);
+            reverse.put(discovered.item, uid);
+            types.put(uid, discovered.type);
+            if (config.historySize > 0
+                    && (discovered.type == ValueType.NUMBER || discovered.type == ValueType.TEMPERATURE)) {
+                ValueHistory history = histories.get(uid);
+                recent.put(uid, history != null ? history : new ValueHistory(config.historySize));
+                for (String aggregate : new String[] { HISTORY_AVERAGE, HISTORY_MINIMUM, HISTORY_MAXIMUM }) {
+                    channels.add(ChannelBuilder.create(new ChannelUID(group, key + "_" + aggregate),
+                            discovered.type.getItemType()).withType(discovered.type.getChannelType())
+                            .withLabel(label + " (" + aggregate + ")").build());
                 }
+                channels.add(ChannelBuilder.create(new ChannelUID(group, key + "_" + HISTORY_RATE), "Number")
+                        .withType(CHANNEL_TYPE_RATE).withLabel(label + " (change per hour)").build());
             }
-        } catch (Exception e) {
-            logger.debug("Error:", e);
-            return;
+            String profile = cached == null ? null : cached.getProfiles().get(discovered.getUnit());
+            if (profile != null && discovered.item.endsWith(ITEM_SEP + ConsumptionHistory.CONSUMPTION)) {
+                List<String> series = ConsumptionHistory.seriesOf(profile);
+                consumption.put(discovered.item, series);
+                for (String name : series) {
+                    for (ConsumptionHistory.Period period : ConsumptionHistory.Period.values()) {
+                        channels.add(ChannelBuilder
+                                .create(new ChannelUID(group, key + consumptionSuffix(name, period)), "Number:Energy")
+                                .withType(CHANNEL_TYPE_ENERGY)
+                                .withLabel(label + " " + name.replaceAll(ITEM_SEP, " ") + " (" + period.getId() + ")")
+                                .build());
+                    }
+                }
+            }
+        }
+        for (Entry<String, ChannelTypeUID> metric : METRIC_CHANNELS.entrySet()) {
+            ChannelUID uid = new ChannelUID(new ChannelGroupUID(getThing().getUID(), METRICS_GROUP), metric.getKey());
+            channels.add(ChannelBuilder.create(uid, "Number").withType(metric.getValue()).build());
+        }
+        channelToItem = mapping;
+        itemToChannel = reverse;
+        channelTypes = types;
+        histories = recent;
+        consumptionSeries = consumption;
+        linkedChannels.retainAll(mapping.keySet());
+        for (ChannelUID uid : mapping.keySet()) {
+            if (isLinked(uid))
+                linkedChannels.add(uid);
+        }
+        Map<ChannelUID, Channel> current = new LinkedHashMap<>();
+        for (Channel channel : getThing().getChannels()) {
+            current.put(channel.getUID(), channel);
         }
-        if (root.isJsonArray()) {
-            JsonArray array = root.getAsJsonArray();
-            for (JsonElement ele : array) {
-                buildChannels(ele, item, channels, primitives, group);
+        Map<ChannelUID, Channel> wanted = new LinkedHashMap<>();
+        for (Channel channel : channels) {
+            wanted.put(channel.getUID(), channel);
+        }
+        ThingBuilder builder = editThing();
+        int removed = 0;
+        int added = 0;
+        for (Channel channel : current.values()) {
+            Channel replacement = wanted.get(channel.getUID());
+            if (replacement == null
+                    || !Objects.equals(replacement.getChannelTypeUID(), channel.getChannelTypeUID())) {
+                builder.withoutChannel(channel.getUID());
+                removed++;
             }
-            return;
         }
-        if (root.isJsonObject()) {
-            JsonObject obj = root.getAsJsonObject();
-            for (String key : obj.keySet()) {
-                JsonElement ele = obj.get(key);
-                buildChannels(ele, item + ITEM_SEP + key, channels, primitives, group);
+        for (Channel channel : wanted.values()) {
+            Channel existing = current.get(channel.getUID());
+            if (existing == null || !Objects.equals(existing.getChannelTypeUID(), channel.getChannelTypeUID())) {
+                builder.withChannel(channel);
+                added++;
             }
-            return;
         }
+        boolean propertiesChanged = !properties.equals(getThing().getProperties());
+        if (added == 0 && removed == 0 && !propertiesChanged)
+            return;
+        logger.debug("Adding " + added + " and removing " + removed + " channels");
+        if (propertiesChanged)
+            builder.withProperties(properties);
+        updateThing(builder.build());
     }
 
 }
@@ -15,20 +15,26 @@ package org.openhab.binding.daikinaltherma.internal;
 import static org.openhab.binding.daikinaltherma.internal.DaikinAlthermaBindingConstants.*;
 
 import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.jetty.websocket.client.WebSocketClient;
+import org.eclipse.smarthome.core.common.ThreadPoolManager;
 import org.eclipse.smarthome.core.thing.Thing;
 import org.eclipse.smarthome.core.thing.ThingTypeUID;
 import org.eclipse.smarthome.core.thing.binding.BaseThingHandlerFactory;
 import org.eclipse.smarthome.core.thing.binding.ThingHandler;
 import org.eclipse.smarthome.core.thing.binding.ThingHandlerFactory;
 import org.eclipse.smarthome.io.net.http.WebSocketFactory;
+import org.openhab.binding.daikinaltherma.MetricsSink;
 import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
 
 /**
  * The {@link DaikinAlthermaHandlerFactory} is responsible for creating things and thing
@@ -47,9 +53,75 @@ public class DaikinAlthermaHandlerFactory extends BaseThingHandlerFactory {
      */
     private @NonNullByDefault({}) WebSocketClient webSocketClient;
 
+    /**
+     * Polls the adapters of all things, so they share a bounded number of threads
+     */
+    private final PollingCoordinator coordinator;
+
+    private volatile @Nullable MetricsSink metricsSink;
+
+    /**
+     * Passes the metrics on to the sink that is currently registered, if any
+     */
+    private final MetricsSink forwardingSink = new MetricsSink() {
+        @Override
+        public void increment(String thing, String name) {
+            MetricsSink sink = metricsSink;
+            if (sink != null)
+                sink.increment(thing, name);
+        }
+
+        @Override
+        public void record(String thing, String name, @Nullable String item, long millis) {
+            MetricsSink sink = metricsSink;
+            if (sink != null)
+                sink.record(thing, name, item, millis);
+        }
+
+        @Override
+        public void gauge(String thing, String name, long value) {
+            MetricsSink sink = metricsSink;
+            if (sink != null)
+                sink.gauge(thing, name, value);
+        }
+    };
+
     @Activate
-    public DaikinAlthermaHandlerFactory(@Reference WebSocketFactory webSocketFactory) {
+    public DaikinAlthermaHandlerFactory(@Reference WebSocketFactory webSocketFactory, Map<String, Object> config) {
         this.webSocketClient = webSocketFactory.getCommonWebSocketClient();
+        this.coordinator = new PollingCoordinator(ThreadPoolManager.getScheduledPool(BINDING_ID),
+                getInt(config, "maxConcurrentPolls", PollingCoordinator.DEFAULT_MAX_CONCURRENT),
+                getInt(config, "pollThreads", PollingCoordinator.DEFAULT_THREADS));
+    }
+
+    @Override
+    protected void deactivate(ComponentContext componentContext) {
+        coordinator.shutdown();
+        super.deactivate(componentContext);
+    }
+
+    private static int getInt(Map<String, Object> config, String key, int defaultValue) {
+        Object value = config.get(key);
+        if (value instanceof Number)
+            return ((Number) value).intValue();
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.toString().trim());
+            } catch (NumberFormatException e) {
+                // fall back to the default
+            }
+        }
+        return defaultValue;
+    }
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policy = ReferencePolicy.DYNAMIC)
+    protected void setMetricsSink(MetricsSink metricsSink) {
+        this.metricsSink = metricsSink;
+    }
+
+    protected void unsetMetricsSink(MetricsSink metricsSink) {
+        if (this.metricsSink == metricsSink)
+            this.metricsSink = null;
     }
 
     @Override
@@ -62,7 +134,8 @@ public class DaikinAlthermaHandlerFactory extends BaseThingHandlerFactory {
         ThingTypeUID thingTypeUID = thing.getThingTypeUID();
 
         if (THING_TYPE_ADAPTER.equals(thingTypeUID)) {
-            return new DaikinAlthermaHandler(thing, new WebsocketHelper(webSocketClient));
+            return new DaikinAlthermaHandler(thing, new WebsocketHelper(webSocketClient), forwardingSink,
+                    coordinator);
         }
 
         return null;
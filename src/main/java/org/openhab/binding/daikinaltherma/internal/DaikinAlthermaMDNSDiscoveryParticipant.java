@@ -7,22 +7,21 @@ import static org.openhab.binding.daikinaltherma.internal.DaikinAlthermaBindingC
 import static org.openhab.binding.daikinaltherma.internal.DaikinAlthermaBindingConstants.PARAM_TYPE;
 import static org.openhab.binding.daikinaltherma.internal.DaikinAlthermaBindingConstants.THING_TYPE_ADAPTER;
 
-import java.io.IOException;
 import java.net.InetAddress;
 import java.net.URI;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import javax.jmdns.ServiceInfo;
 
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.jetty.websocket.client.WebSocketClient;
@@ -43,19 +42,27 @@ import org.slf4j.LoggerFactory;
 public class DaikinAlthermaMDNSDiscoveryParticipant implements MDNSDiscoveryParticipant {
 
     /**
-     * the shared web socket client
+     * How long an identified adapter is not probed again
+     */
+    private static final long RESULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    /**
+     * How long to wait before probing an adapter again that didn't answer
      */
-    private @NonNullByDefault({}) WebSocketClient webSocketClient;
-    private WebsocketHelper helper;
+    private static final long FAILURE_TTL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * Every probe gets a helper of its own, so several adapters can be probed at once
+     */
+    private final Supplier<WebsocketHelper> helpers;
 
     @Activate
     public DaikinAlthermaMDNSDiscoveryParticipant(@Reference WebSocketFactory webSocketFactory) {
-        this.webSocketClient = webSocketFactory.getCommonWebSocketClient();
-        this.helper = new WebsocketHelper(webSocketClient);
+        WebSocketClient webSocketClient = webSocketFactory.getCommonWebSocketClient();
+        this.helpers = () -> new WebsocketHelper(webSocketClient);
     }
 
-    public DaikinAlthermaMDNSDiscoveryParticipant(WebsocketHelper helper) {
-        this.helper=helper;
+    public DaikinAlthermaMDNSDiscoveryParticipant(Supplier<WebsocketHelper> helpers) {
+        this.helpers = helpers;
     }
 
 
@@ -72,65 +79,131 @@ public class DaikinAlthermaMDNSDiscoveryParticipant implements MDNSDiscoveryPart
         return "_daikin._tcp.local.";
     }
 
+    /**
+     * A probe of all addresses of a service, it is shared by the host and port of every address
+     */
+    private static class Probe {
+        final CompletableFuture<@Nullable DiscoveryResult> result;
+        /**
+         * When the probe completed, the result is cached from then on
+         */
+        volatile long completed = 0;
+
+        Probe(CompletableFuture<@Nullable DiscoveryResult> result) {
+            this.result = result;
+            result.whenComplete((r, e) -> completed = System.currentTimeMillis());
+        }
+
+        boolean isExpired(long now) {
+            if (!result.isDone() || completed == 0)
+                return false;
+            long ttl = result.getNow(null) == null ? FAILURE_TTL_MILLIS : RESULT_TTL_MILLIS;
+            return now - completed > ttl;
+        }
+    }
+
+    /**
+     * The probes that were started, keyed by host and port. A probe runs in the background, its result is returned
+     * by the following announcements of the same service until it expires.
+     */
+    private final Map<String, Probe> probes = new ConcurrentHashMap<>();
+
     @Override
     public @Nullable DiscoveryResult createResult(ServiceInfo service) {
         InetAddress[] adresses = service.getInetAddresses();
-        logger.info(service.getName() + " " + Arrays.toString(adresses) + " " + service.getQualifiedName());
+        logger.debug(service.getName() + " " + Arrays.toString(adresses) + " " + service.getQualifiedName());
 
         if (adresses != null && adresses.length > 0) {
-            InetAddress adr = adresses[0];
             int port = 80;
             if (service.getPort() > 0)
                 port = service.getPort();
-            String url = "ws://" + adr.getHostAddress() + ":" + port + "/mca";
-            logger.debug("URL:" + url);
-            try {
-                if (!helper.connect(URI.create(url))){
-                    logger.debug("Discovery failed to connect to:"+url);
-                    return null;
+            long now = System.currentTimeMillis();
+            Probe probe = null;
+            synchronized (probes) {
+                probes.values().removeIf(p -> p.isExpired(now));
+                for (InetAddress address : adresses) {
+                    probe = probes.get(address.getHostAddress() + ":" + port);
+                    if (probe != null)
+                        break;
+                }
+                if (probe == null) {
+                    probe = new Probe(probe(adresses, port));
+                    for (InetAddress address : adresses) {
+                        probes.put(address.getHostAddress() + ":" + port, probe);
+                    }
                 }
-                Optional<String> reply = helper.sendDiscovery();
-                if (!reply.isPresent())
-                    return null;
-                JsonParser parser = new JsonParser();
-                JsonElement root = parser.parse(reply.get());
-                JsonObject description = root.getAsJsonObject().get("m2m:rsp").getAsJsonObject().get("pc")
-                        .getAsJsonObject().get("m2m:dvi").getAsJsonObject();
-                String id = description.get("dlb").getAsString();
-                String model = description.get("mod").getAsString();
-                String type = description.get("dty").getAsString();
-                String firmware = description.get("fwv").getAsString();
-                String software = description.get("swv").getAsString();
-                String hardware = description.get("hwv").getAsString();
-                Map<String, Object> properties = new HashMap<>();
-                properties.put(PARAM_HOST, adr.getHostAddress());
-                properties.put(PARAM_PORT, port);
-                properties.put(Thing.PROPERTY_SERIAL_NUMBER, id);
-                properties.put(Thing.PROPERTY_MODEL_ID, model);
-                properties.put(PARAM_TYPE, type);
-                properties.put(Thing.PROPERTY_FIRMWARE_VERSION, firmware);
-                properties.put(Thing.PROPERTY_HARDWARE_VERSION, hardware);
-                properties.put(PARAM_SW_VERSION, software);
-                logger.debug("Found " + id + " model:" + model + " " + type + " " + firmware + " " + software);
-                ThingUID thingID = new ThingUID(THING_TYPE_ADAPTER, id);
-                return DiscoveryResultBuilder.create(thingID)//
-                        .withLabel("Daikin " + model + " " + id)//
-                        .withProperties(properties)//
-                        .withThingType(THING_TYPE_ADAPTER)//
-                        .withRepresentationProperty(id)//
-                        .build();
-            } catch (IOException | InterruptedException e) {
-                logger.debug("Connection exception:", e);
-            } finally {
-                helper.disconnect();
             }
+            return probe.result.getNow(null);
         }
         return null;
     }
 
+    /**
+     * Probes all addresses at once, the first one that answers wins
+     */
+    private CompletableFuture<@Nullable DiscoveryResult> probe(InetAddress[] adresses, int port) {
+        CompletableFuture<@Nullable DiscoveryResult> first = new CompletableFuture<>();
+        AtomicInteger remaining = new AtomicInteger(adresses.length);
+        for (InetAddress address : adresses) {
+            probe(address.getHostAddress(), port).whenComplete((result, e) -> {
+                if (result != null)
+                    first.complete(result);
+                else if (remaining.decrementAndGet() == 0)
+                    first.complete(null);
+            });
+        }
+        return first;
+    }
+
+    private CompletableFuture<@Nullable DiscoveryResult> probe(String host, int port) {
+        String url = "ws://" + (host.indexOf(':') >= 0 ? "[" + host + "]" : host) + ":" + port + "/mca";
+        logger.debug("URL:" + url);
+        WebsocketHelper helper = helpers.get();
+        return helper.connectAsync(URI.create(url)).thenCompose(connected -> {
+            if (!connected) {
+                logger.debug("Discovery failed to connect to:" + url);
+                return CompletableFuture.<@Nullable DiscoveryResult> completedFuture(null);
+            }
+            return helper.discover().thenApply(reply -> createResult(reply, host, port));
+        }).handle((result, e) -> {
+            helper.disconnect();
+            if (e != null) {
+                logger.debug("Discovery of " + url + " failed:", e);
+                return null;
+            }
+            return result;
+        });
+    }
+
+    private DiscoveryResult createResult(M2mResponse reply, String host, int port) {
+        Map<String, String> description = reply.getDeviceInfo();
+        String id = description.getOrDefault("dlb", "");
+        String model = description.getOrDefault("mod", "");
+        String type = description.getOrDefault("dty", "");
+        String firmware = description.getOrDefault("fwv", "");
+        String software = description.getOrDefault("swv", "");
+        String hardware = description.getOrDefault("hwv", "");
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(PARAM_HOST, host);
+        properties.put(PARAM_PORT, port);
+        properties.put(Thing.PROPERTY_SERIAL_NUMBER, id);
+        properties.put(Thing.PROPERTY_MODEL_ID, model);
+        properties.put(PARAM_TYPE, type);
+        properties.put(Thing.PROPERTY_FIRMWARE_VERSION, firmware);
+        properties.put(Thing.PROPERTY_HARDWARE_VERSION, hardware);
+        properties.put(PARAM_SW_VERSION, software);
+        logger.debug("Found " + id + " model:" + model + " " + type + " " + firmware + " " + software);
+        ThingUID thingID = new ThingUID(THING_TYPE_ADAPTER, id);
+        return DiscoveryResultBuilder.create(thingID)//
+                .withLabel("Daikin " + model + " " + id)//
+                .withProperties(properties)//
+                .withThingType(THING_TYPE_ADAPTER)//
+                .withRepresentationProperty(id)//
+                .build();
+    }
+
     @Override
     public @Nullable ThingUID getThingUID(ServiceInfo service) {
-        System.out.println("Service queried for getThingID:"+service+" "+service.getName());
         logger.debug("Service queried for getThingID:"+service+" "+service.getName());
         return new ThingUID(THING_TYPE_ADAPTER, service.getName());
     }
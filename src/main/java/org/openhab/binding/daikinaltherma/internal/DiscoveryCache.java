@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2010-2019 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.daikinaltherma.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.smarthome.config.core.ConfigConstants;
+import org.eclipse.smarthome.core.thing.ThingUID;
+import org.openhab.binding.daikinaltherma.internal.ChannelDiscovery.DiscoveredItem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link DiscoveryCache} stores the discovered items of an adapter in the user data folder. The items only
+ * change with the firmware of the adapter, so the cache is only valid for the serial number, firmware and software
+ * version it was created for. The UnitProfiles are kept as well, so a later discovery only probes the units whose
+ * UnitProfile changed.
+ *
+ * @author Karsten Becker - Initial contribution
+ */
+@NonNullByDefault
+public class DiscoveryCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiscoveryCache.class);
+
+    private static final Gson GSON = new Gson();
+
+    private static class CachedItem {
+        final String item;
+        final @Nullable ValueType type;
+
+        CachedItem(String item, ValueType type) {
+            this.item = item;
+            this.type = type;
+        }
+    }
+
+    private final String serial;
+    private final String firmware;
+    private final String software;
+    /**
+     * The items of each channel group, in discovery order
+     */
+    private final Map<String, List<CachedItem>> groups;
+    /**
+     * The UnitProfile of each unit index, missing in caches of older versions
+     */
+    private final @Nullable Map<String, String> profiles;
+
+    public DiscoveryCache(String serial, String firmware, String software, List<DiscoveredItem> items,
+            Map<String, String> profiles) {
+        this.serial = serial;
+        this.firmware = firmware;
+        this.software = software;
+        this.profiles = profiles;
+        this.groups = new LinkedHashMap<>();
+        for (DiscoveredItem item : items) {
+            groups.computeIfAbsent(item.group, k -> new ArrayList<>()).add(new CachedItem(item.item, item.type));
+        }
+    }
+
+    public boolean matches(String serial, String firmware, String software) {
+        return this.serial.equals(serial) && this.firmware.equals(firmware) && this.software.equals(software);
+    }
+
+    /**
+     * Returns a cache for the same versions with other items
+     */
+    public DiscoveryCache withItems(List<DiscoveredItem> items, Map<String, String> profiles) {
+        return new DiscoveryCache(serial, firmware, software, items, profiles);
+    }
+
+    public Map<String, String> getProfiles() {
+        Map<String, String> known = profiles;
+        return known != null ? known : Collections.emptyMap();
+    }
+
+    public List<DiscoveredItem> getItems() {
+        List<DiscoveredItem> items = new ArrayList<>();
+        for (Entry<String, List<CachedItem>> group : groups.entrySet()) {
+            for (CachedItem item : group.getValue()) {
+                // Unknown types of a newer version of the binding
+                ValueType type = item.type;
+                items.add(new DiscoveredItem(group.getKey(), item.item, type != null ? type : ValueType.STRING));
+            }
+        }
+        return items;
+    }
+
+    public static @Nullable DiscoveryCache load(ThingUID thing) {
+        File file = getFile(thing);
+        if (!file.exists())
+            return null;
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            DiscoveryCache cache = GSON.fromJson(reader, DiscoveryCache.class);
+            if (cache == null || cache.serial == null || cache.firmware == null || cache.software == null
+                    || cache.groups == null)
+                return null;
+            return cache;
+        } catch (IOException | JsonParseException e) {
+            logger.debug("Ignoring unreadable discovery cache " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void save(ThingUID thing) {
+        File file = getFile(thing);
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            try (Writer writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+                GSON.toJson(this, writer);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.warn("Failed to write the discovery cache " + file + ": " + e.getMessage());
+        }
+    }
+
+    public static void delete(ThingUID thing) {
+        File file = getFile(thing);
+        if (file.exists() && !file.delete())
+            logger.debug("Failed to delete the discovery cache " + file);
+    }
+
+    private static File getFile(ThingUID thing) {
+        return new File(ConfigConstants.getUserDataFolder() + File.separator
+                + DaikinAlthermaBindingConstants.BINDING_ID + File.separator
+                + thing.getAsString().replace(':', '_') + ".json");
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2010-2019 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.daikinaltherma.internal;
+
+import java.util.Arrays;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The {@link FrameTemplate} is the m2m:rqp frame of a request with everything but the rqi filled in. The rqi is
+ * a number written as 16 hex digits, so every frame of a template has the same length and only the digits change.
+ * Filling in the rqi copies the template into a buffer of the calling thread, the frame itself is the only object
+ * that is allocated. Replies are matched by the number, which is parsed back from their rqi.
+ *
+ * @author Karsten Becker - Initial contribution
+ */
+@NonNullByDefault
+public class FrameTemplate {
+
+    static final int RQI_LENGTH = 16;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final String PLACEHOLDER = String.format("%0" + RQI_LENGTH + "d", 0);
+
+    private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[256]);
+
+    private final String item;
+    private final String to;
+    private final @Nullable String readKey;
+    private final char[] frame;
+    private final int rqiOffset;
+
+    /**
+     * @param item the name of the request in logs and metrics
+     * @param content appended to the fields of the request, empty for a plain retrieve
+     */
+    public FrameTemplate(String item, int op, String to, String content) {
+        this.item = item;
+        this.to = to;
+        this.readKey = op == WebsocketHelper.OP_RETRIEVE && content.isEmpty() ? to : null;
+        String text = WebsocketHelper.buildFrame(op, to, PLACEHOLDER, content);
+        this.frame = text.toCharArray();
+        this.rqiOffset = text.indexOf("\"rqi\":\"" + PLACEHOLDER) + 7;
+    }
+
+    public String getItem() {
+        return item;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    /**
+     * Returns the target of a plain retrieve, which can be shared by requests for it, null for all other requests
+     */
+    public @Nullable String getReadKey() {
+        return readKey;
+    }
+
+    /**
+     * Returns the frame with the given rqi
+     */
+    public String fill(long rqi) {
+        char[] buffer = buffer(frame.length);
+        System.arraycopy(frame, 0, buffer, 0, frame.length);
+        writeHex(rqi, buffer, rqiOffset);
+        return new String(buffer, 0, frame.length);
+    }
+
+    /**
+     * Returns the number of an rqi as it is written to the frame. Throws a NumberFormatException if the rqi was not
+     * written by a template.
+     */
+    public static long parseRqi(String rqi) {
+        if (rqi.length() != RQI_LENGTH)
+            throw new NumberFormatException("Unexpected rqi:" + rqi);
+        return Long.parseUnsignedLong(rqi, 16);
+    }
+
+    private static char[] buffer(int length) {
+        char[] buffer = BUFFER.get();
+        if (buffer.length < length) {
+            buffer = Arrays.copyOf(buffer, Math.max(length, buffer.length * 2));
+            BUFFER.set(buffer);
+        }
+        return buffer;
+    }
+
+    private static void writeHex(long value, char[] buffer, int offset) {
+        for (int i = RQI_LENGTH - 1; i >= 0; i--) {
+            buffer[offset + i] = HEX[(int) (value & 0xf)];
+            value >>>= 4;
+        }
+    }
+}
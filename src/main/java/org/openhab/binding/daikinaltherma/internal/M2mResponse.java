@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2010-2019 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.daikinaltherma.internal;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The {@link M2mResponse} holds the fields of a m2m:rsp frame that the binding is interested in, or of a m2m:rqp
+ * frame the adapter sends as notification. Only the {@link ResponseDecoder} sets its fields, while it decodes a frame.
+ * This includes the from of a content instance that was read from the child resources of a container, which is only
+ * known once the path of the child is. Once the decoder returned it, the response is not modified anymore and can be
+ * shared between threads.
+ *
+ * @author Karsten Becker - Initial contribution
+ */
+@NonNullByDefault
+public class M2mResponse {
+
+    public static final int RSC_OK = 2000;
+    public static final int RSC_CREATED = 2001;
+    public static final int RSC_NOT_FOUND = 4004;
+    public static final int RSC_CONFLICT = 4105;
+
+    final String frame;
+
+    boolean request;
+    int operation = -1;
+    int responseCode = -1;
+    @Nullable
+    String requestId;
+    @Nullable
+    String from;
+    @Nullable
+    String to;
+
+    /**
+     * Fields of the m2m:cin, the value of an item
+     */
+    boolean contentInstance;
+    long stateTag = -1;
+    @Nullable
+    String lastModified;
+    @Nullable
+    String content;
+
+    /**
+     * The lbl of a m2m:cnt, the container of a unit
+     */
+    @Nullable
+    String label;
+
+    /**
+     * The sur of a m2m:sgn, the subscription a notification is for
+     */
+    @Nullable
+    String subscription;
+
+    /**
+     * The fields of a m2m:dvi, only allocated for the device info
+     */
+    @Nullable
+    Map<String, String> deviceInfo;
+
+    M2mResponse(String frame) {
+        this.frame = frame;
+    }
+
+    /**
+     * Returns true for a m2m:rqp sent by the adapter
+     */
+    public boolean isRequest() {
+        return request;
+    }
+
+    public int getOperation() {
+        return operation;
+    }
+
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    public boolean isOk() {
+        return responseCode == RSC_OK;
+    }
+
+    public @Nullable String getRequestId() {
+        return requestId;
+    }
+
+    public @Nullable String getFrom() {
+        return from;
+    }
+
+    public @Nullable String getTo() {
+        return to;
+    }
+
+    /**
+     * Returns true if the frame contains a m2m:cin
+     */
+    public boolean hasContentInstance() {
+        return contentInstance;
+    }
+
+    /**
+     * Returns the state tag of the m2m:cin, or -1 if there is none
+     */
+    public long getStateTag() {
+        return stateTag;
+    }
+
+    public @Nullable String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Returns the con of the m2m:cin. Numbers are returned as they were sent.
+     */
+    public @Nullable String getContent() {
+        return content;
+    }
+
+    public @Nullable String getLabel() {
+        return label;
+    }
+
+    public @Nullable String getSubscription() {
+        return subscription;
+    }
+
+    public Map<String, String> getDeviceInfo() {
+        Map<String, String> info = deviceInfo;
+        return info == null ? Collections.emptyMap() : info;
+    }
+
+    void putDeviceInfo(String key, String value) {
+        Map<String, String> info = deviceInfo;
+        if (info == null) {
+            info = new HashMap<>();
+            deviceInfo = info;
+        }
+        info.put(key, value);
+    }
+
+    @Override
+    public String toString() {
+        return frame;
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright (c) 2010-2019 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.daikinaltherma.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link PollScheduler} decides which items are due for polling. Every item has its own interval, which is either
+ * configured for its path or adapts to how often the value changes: it doubles with every poll that returned the same
+ * value, up to the maximum interval, and drops back to the base interval after a change. Subscribed items are polled
+ * at the maximum interval as a fallback. The first round can be offset, so that adapters that start at the same time
+ * spread their polls over the interval.
+ *
+ * @author Karsten Becker - Initial contribution
+ */
+@NonNullByDefault
+public class PollScheduler {
+
+    private static class Schedule {
+        long intervalMillis;
+        long nextDue;
+
+        Schedule(long intervalMillis, long nextDue) {
+            this.intervalMillis = intervalMillis;
+            this.nextDue = nextDue;
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(PollScheduler.class);
+
+    private final long baseMillis;
+    private final long maxMillis;
+    /**
+     * Fixed intervals keyed by a suffix of the item path
+     */
+    private final Map<String, Long> configured;
+
+    private final Map<String, Schedule> schedules = new ConcurrentHashMap<>();
+
+    private final long offsetMillis;
+
+    /**
+     * The time of the first round, -1 until the first call of {@link #due(Collection, long)}
+     */
+    private volatile long firstRound = -1;
+
+    public PollScheduler(long baseSeconds, long maxSeconds, Map<String, Long> configured) {
+        this(baseSeconds, maxSeconds, configured, 0);
+    }
+
+    /**
+     * @param offsetMillis the delay of the first round
+     */
+    public PollScheduler(long baseSeconds, long maxSeconds, Map<String, Long> configured, long offsetMillis) {
+        this.baseMillis = TimeUnit.SECONDS.toMillis(Math.max(1, baseSeconds));
+        this.maxMillis = Math.max(baseMillis, TimeUnit.SECONDS.toMillis(maxSeconds));
+        this.configured = configured;
+        this.offsetMillis = Math.max(0, offsetMillis);
+    }
+
+    /**
+     * Returns the items that are due at the given time. Items that were not seen before are due with the first round,
+     * or right away once it has passed. Items that are no longer given are forgotten.
+     */
+    public List<String> due(Collection<String> items, long now) {
+        if (firstRound < 0)
+            firstRound = now + offsetMillis;
+        long start = Math.max(now, firstRound);
+        schedules.keySet().retainAll(items);
+        List<String> due = new ArrayList<>();
+        for (String item : items) {
+            Schedule schedule = schedules.computeIfAbsent(item, k -> new Schedule(initialInterval(k), start));
+            if (schedule.nextDue <= now)
+                due.add(item);
+        }
+        return due;
+    }
+
+    /**
+     * Schedules the next poll of an item after its value was retrieved, by a poll or when it was read back after a
+     * write or pushed by the adapter
+     */
+    public void polled(String item, boolean changed, boolean subscribed, long now) {
+        Schedule schedule = schedules.get(item);
+        if (schedule == null)
+            return;
+        Long fixed = getConfigured(item);
+        if (fixed != null)
+            schedule.intervalMillis = fixed;
+        else if (subscribed)
+            schedule.intervalMillis = maxMillis;
+        else if (changed)
+            schedule.intervalMillis = baseMillis;
+        else
+            schedule.intervalMillis = Math.min(maxMillis, schedule.intervalMillis * 2);
+        schedule.nextDue = now + schedule.intervalMillis;
+    }
+
+    /**
+     * Retries an item after the base interval when it could not be retrieved, without changing its interval
+     */
+    public void failed(String item, long now) {
+        Schedule schedule = schedules.get(item);
+        if (schedule != null)
+            schedule.nextDue = now + Math.min(baseMillis, schedule.intervalMillis);
+    }
+
+    private long initialInterval(String item) {
+        Long fixed = getConfigured(item);
+        return fixed != null ? fixed : baseMillis;
+    }
+
+    private @Nullable Long getConfigured(String item) {
+        for (Entry<String, Long> entry : configured.entrySet()) {
+            String path = entry.getKey();
+            if (item.equals(path) || item.endsWith(ChannelDiscovery.ITEM_SEP + path))
+                return entry.getValue();
+        }
+        return null;
+    }
+
+    /**
+     * Parses intervals in the form <code>Sensor/IndoorTemperature=30, UnitInfo/UnitType=3600</code>. The path is
+     * matched against the end of the item path, the interval is given in seconds. Invalid entries are skipped.
+     */
+    public static Map<String, Long> parseIntervals(@Nullable String spec) {
+        Map<String, Long> intervals = new LinkedHashMap<>();
+        if (spec == null || spec.trim().isEmpty())
+            return intervals;
+        for (String entry : spec.split(",")) {
+            int idx = entry.indexOf('=');
+            if (idx <= 0) {
+                logger.warn("Ignoring invalid item interval:" + entry);
+                continue;
+            }
+            String path = entry.substring(0, idx).trim();
+            while (path.startsWith(ChannelDiscovery.ITEM_SEP))
+                path = path.substring(1);
+            try {
+                long seconds = Long.parseLong(entry.substring(idx + 1).trim());
+                if (seconds <= 0 || path.isEmpty())
+                    throw new NumberFormatException();
+                intervals.put(path, TimeUnit.SECONDS.toMillis(seconds));
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring invalid item interval:" + entry);
+            }
+        }
+        return intervals;
+    }
+}
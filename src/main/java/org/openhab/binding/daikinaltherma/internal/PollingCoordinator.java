@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) 2010-2019 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.daikinaltherma.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link PollingCoordinator} runs the polling of all adapters on a small pool of its own threads, so that many
+ * adapters don't starve the shared scheduler of openHAB. Only a limited number of adapters is polled at once, the
+ * adapters take turns in round-robin order when more of them are due. Every registration gets a spread within its
+ * polling interval, which the adapter applies to the first round of its items, so that adapters that start together
+ * don't poll in lockstep.
+ *
+ * @author Karsten Becker - Initial contribution
+ */
+@NonNullByDefault
+public class PollingCoordinator {
+
+    /**
+     * A polling round of an adapter
+     */
+    public interface Pollable {
+        /**
+         * Starts the round, the future completes when the round is done
+         */
+        CompletableFuture<?> poll();
+    }
+
+    public static final int DEFAULT_MAX_CONCURRENT = 2;
+    public static final int DEFAULT_THREADS = 2;
+
+    private static final long DISPATCH_MILLIS = 250;
+    /**
+     * Spreads the offsets of the adapters evenly over the interval, however many there are
+     */
+    private static final double GOLDEN_RATIO = 0.6180339887;
+
+    /**
+     * The registration of an adapter, cancel it to stop polling
+     */
+    public class Registration {
+        private final Pollable task;
+        private final long periodMillis;
+        private final double spread;
+        private long nextRun;
+        private boolean running = false;
+
+        private Registration(Pollable task, long periodMillis, double spread, long nextRun) {
+            this.task = task;
+            this.periodMillis = periodMillis;
+            this.spread = spread;
+            this.nextRun = nextRun;
+        }
+
+        /**
+         * Returns the offset of the first round within the given polling interval
+         */
+        public long getOffset(long intervalMillis) {
+            return (long) (spread * intervalMillis);
+        }
+
+        public void cancel() {
+            unregister(this);
+        }
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(PollingCoordinator.class);
+
+    private final List<Registration> registrations = new ArrayList<>();
+    private final ExecutorService workers;
+    private final ScheduledExecutorService dispatcher;
+    private @Nullable ScheduledFuture<?> dispatch;
+    private final int maxConcurrent;
+
+    /**
+     * Guarded by this
+     */
+    private int running = 0;
+    private int roundRobin = 0;
+    private int registered = 0;
+
+    public PollingCoordinator(ScheduledExecutorService dispatcher, int maxConcurrent, int threads) {
+        this.dispatcher = dispatcher;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 60,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, DaikinAlthermaBindingConstants.BINDING_ID + "-poll-"
+                            + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        this.workers = pool;
+    }
+
+    /**
+     * Polls the task every period, starting after an offset within the first period
+     */
+    public synchronized Registration register(Pollable task, long periodMillis) {
+        long period = Math.max(DISPATCH_MILLIS, periodMillis);
+        double spread = (registered++ * GOLDEN_RATIO) % 1;
+        Registration registration = new Registration(task, period, spread,
+                System.currentTimeMillis() + (long) (spread * period));
+        registrations.add(registration);
+        if (dispatch == null)
+            dispatch = dispatcher.scheduleWithFixedDelay(this::dispatch, DISPATCH_MILLIS, DISPATCH_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        return registration;
+    }
+
+    private synchronized void unregister(Registration registration) {
+        registrations.remove(registration);
+        if (registrations.isEmpty() && dispatch != null) {
+            dispatch.cancel(false);
+            dispatch = null;
+        }
+    }
+
+    public synchronized void shutdown() {
+        registrations.clear();
+        if (dispatch != null) {
+            dispatch.cancel(false);
+            dispatch = null;
+        }
+        workers.shutdownNow();
+    }
+
+    /**
+     * Starts the due rounds, as long as fewer than the maximum are running. The search for due adapters starts one
+     * further every time, so that no adapter is starved.
+     */
+    private synchronized void dispatch() {
+        int size = registrations.size();
+        if (size == 0)
+            return;
+        long now = System.currentTimeMillis();
+        roundRobin = (roundRobin + 1) % size;
+        for (int i = 0; i < size && running < maxConcurrent; i++) {
+            Registration registration = registrations.get((roundRobin + i) % size);
+            if (registration.running || registration.nextRun > now)
+                continue;
+            registration.running = true;
+            registration.nextRun = now + registration.periodMillis;
+            running++;
+            try {
+                workers.execute(() -> run(registration));
+            } catch (RejectedExecutionException e) {
+                finished(registration);
+            }
+        }
+    }
+
+    private void run(Registration registration) {
+        CompletableFuture<?> round;
+        try {
+            round = registration.task.poll();
+        } catch (RuntimeException e) {
+            logger.warn("Polling failed", e);
+            finished(registration);
+            return;
+        }
+        round.whenComplete((v, e) -> finished(registration));
+    }
+
+    private synchronized void finished(Registration registration) {
+        registration.running = false;
+        running--;
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2010-2019 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.daikinaltherma.internal;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * The {@link RequestPriority} decides the order in which the {@link WebsocketHelper} sends queued requests, the most
+ * urgent first. Each priority limits how many of its requests may be queued, and how long they may wait before they
+ * are discarded instead of being sent late.
+ *
+ * @author Karsten Becker - Initial contribution
+ */
+@NonNullByDefault
+public enum RequestPriority {
+    /**
+     * Refreshes and read-backs the user is waiting for
+     */
+    INTERACTIVE(64, 5),
+    WRITE(64, 10),
+    POLL(512, 30),
+    /**
+     * The walk over the UnitProfiles and the device info
+     */
+    DISCOVERY(1024, 60);
+
+    private final int maxQueued;
+    private final long deadlineNanos;
+
+    private RequestPriority(int maxQueued, long deadlineSeconds) {
+        this.maxQueued = maxQueued;
+        this.deadlineNanos = TimeUnit.SECONDS.toNanos(deadlineSeconds);
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    public long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+}
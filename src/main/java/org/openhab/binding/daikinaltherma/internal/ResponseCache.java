@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2010-2019 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.daikinaltherma.internal;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The {@link ResponseCache} keeps the latest content instance of each item for a short time, so refreshes are
+ * answered from recent polls and notifications instead of asking the adapter again. Refreshes of the same item that
+ * miss the cache at the same time share a single request.
+ *
+ * @author Karsten Becker - Initial contribution
+ */
+@NonNullByDefault
+public class ResponseCache {
+
+    private static class Entry {
+        final M2mResponse response;
+        final long time;
+
+        Entry(M2mResponse response, long time) {
+            this.response = response;
+            this.time = time;
+        }
+    }
+
+    private final long ttlNanos;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final Map<String, CompletableFuture<M2mResponse>> loading = new ConcurrentHashMap<>();
+
+    /**
+     * A TTL of 0 disables the caching, concurrent requests for an item are still shared
+     */
+    public ResponseCache(long ttlNanos) {
+        this.ttlNanos = ttlNanos;
+    }
+
+    /**
+     * Remembers the content instance of the item, unless a newer one is known already
+     */
+    public void put(String item, M2mResponse response) {
+        if (ttlNanos <= 0 || !response.hasContentInstance())
+            return;
+        Entry entry = new Entry(response, System.nanoTime());
+        entries.merge(item, entry,
+                (previous, next) -> next.response.getStateTag() >= previous.response.getStateTag() ? next : previous);
+    }
+
+    /**
+     * Returns the content instance of the item if it is younger than the TTL, null otherwise
+     */
+    public @Nullable M2mResponse get(String item) {
+        Entry entry = entries.get(item);
+        if (entry == null || System.nanoTime() - entry.time > ttlNanos)
+            return null;
+        return entry.response;
+    }
+
+    /**
+     * Returns the cached content instance of the item, or loads it. A load that is already running for the item is
+     * shared instead of starting another one.
+     */
+    public CompletableFuture<M2mResponse> get(String item,
+            Function<String, CompletableFuture<M2mResponse>> loader) {
+        M2mResponse cached = get(item);
+        if (cached != null)
+            return CompletableFuture.completedFuture(cached);
+        CompletableFuture<M2mResponse> created = new CompletableFuture<>();
+        CompletableFuture<M2mResponse> running = loading.putIfAbsent(item, created);
+        if (running != null)
+            return running;
+        loader.apply(item).whenComplete((rsp, e) -> {
+            loading.remove(item, created);
+            if (e != null) {
+                created.completeExceptionally(e);
+            } else {
+                put(item, rsp);
+                created.complete(rsp);
+            }
+        });
+        return created;
+    }
+
+    /**
+     * Forgets the item, the next request loads it again instead of sharing a load that started earlier
+     */
+    public void invalidate(String item) {
+        entries.remove(item);
+        loading.remove(item);
+    }
+
+    public void clear() {
+        entries.clear();
+        loading.clear();
+    }
+}
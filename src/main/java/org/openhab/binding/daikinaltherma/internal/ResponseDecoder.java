@@ -0,0 +1,273 @@
+/**
+ * Copyright (c) 2010-2019 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.daikinaltherma.internal;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The {@link ResponseDecoder} pulls the interesting fields out of a frame of the adapter with a streaming reader,
+ * without building a tree of the whole frame. Values are picked by the name of the object they are part of, so
+ * the st of a m2m:cin is found no matter whether it is part of a reply or nested in a notification. Arrays are
+ * skipped.
+ *
+ * @author Karsten Becker - Initial contribution
+ */
+@NonNullByDefault
+public class ResponseDecoder {
+
+    private static final String RSP = "m2m:rsp";
+    private static final String RQP = "m2m:rqp";
+    private static final String CIN = "m2m:cin";
+    private static final String CNT = "m2m:cnt";
+    private static final String SGN = "m2m:sgn";
+    private static final String DVI = "m2m:dvi";
+
+    /**
+     * A container of a reply that includes the child resources
+     */
+    private static class Node {
+        @Nullable
+        String name;
+        @Nullable
+        M2mResponse latest;
+        final List<Node> children = new ArrayList<>();
+    }
+
+    private interface ElementReader {
+        void read() throws IOException;
+    }
+
+    private ResponseDecoder() {
+    }
+
+    /**
+     * Decodes a frame. Throws an IOException if the frame is not valid JSON or neither a m2m:rsp nor a m2m:rqp.
+     */
+    public static M2mResponse decode(String frame) throws IOException {
+        M2mResponse result = new M2mResponse(frame);
+        boolean found = false;
+        try (JsonReader reader = new JsonReader(new StringReader(frame))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ((RSP.equals(name) || RQP.equals(name)) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    result.request = RQP.equals(name);
+                    found = true;
+                    readObject(reader, name, result);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (NumberFormatException | IllegalStateException e) {
+            throw new IOException("Unexpected content: " + e.getMessage(), e);
+        }
+        if (!found)
+            throw new IOException("Expected a m2m:rsp or m2m:rqp object");
+        return result;
+    }
+
+    /**
+     * Decodes the reply to a retrieve of the item that includes its child resources. Returns the latest content
+     * instance of every container below it, keyed by the item of the container. Each of them looks like the reply to
+     * a retrieve of <code>&lt;item&gt;/la</code>. Throws an IOException if the frame is not a valid m2m:rsp.
+     */
+    public static Map<String, M2mResponse> decodeChildren(String frame, String item) throws IOException {
+        Map<String, M2mResponse> result = new HashMap<>();
+        try (JsonReader reader = new JsonReader(new StringReader(frame))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (RSP.equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if ("pc".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                            reader.beginObject();
+                            while (reader.hasNext()) {
+                                reader.nextName();
+                                if (reader.peek() == JsonToken.BEGIN_OBJECT)
+                                    collect(readNode(reader, frame), item, result);
+                                else
+                                    reader.skipValue();
+                            }
+                            reader.endObject();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (NumberFormatException | IllegalStateException e) {
+            throw new IOException("Unexpected content: " + e.getMessage(), e);
+        }
+        return result;
+    }
+
+    /**
+     * Reads a resource with its child containers and content instances. The rn may come after the children, so the
+     * items are only known once the whole tree is read.
+     */
+    private static Node readNode(JsonReader reader, String frame) throws IOException {
+        Node node = new Node();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            JsonToken token = reader.peek();
+            if (CIN.equals(name)) {
+                readElements(reader, () -> {
+                    M2mResponse cin = new M2mResponse(frame);
+                    cin.responseCode = M2mResponse.RSC_OK;
+                    cin.contentInstance = true;
+                    readObject(reader, CIN, cin);
+                    M2mResponse latest = node.latest;
+                    if (latest == null || cin.stateTag > latest.stateTag)
+                        node.latest = cin;
+                });
+            } else if (CNT.equals(name)) {
+                readElements(reader, () -> node.children.add(readNode(reader, frame)));
+            } else if ("rn".equals(name) && token == JsonToken.STRING) {
+                node.name = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return node;
+    }
+
+    /**
+     * Reads a single object or every object of an array
+     */
+    private static void readElements(JsonReader reader, ElementReader element) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.BEGIN_OBJECT) {
+            element.read();
+        } else if (token == JsonToken.BEGIN_ARRAY) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (reader.peek() == JsonToken.BEGIN_OBJECT)
+                    element.read();
+                else
+                    reader.skipValue();
+            }
+            reader.endArray();
+        } else {
+            reader.skipValue();
+        }
+    }
+
+    private static void collect(Node node, String item, Map<String, M2mResponse> result) {
+        M2mResponse latest = node.latest;
+        if (latest != null) {
+            latest.from = WebsocketHelper.ITEM_PREFIX + item + "/la";
+            result.put(item, latest);
+        }
+        for (Node child : node.children) {
+            if (child.name != null)
+                collect(child, item + "/" + child.name, result);
+        }
+    }
+
+    private static void readObject(JsonReader reader, String context, M2mResponse result) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            JsonToken token = reader.peek();
+            if (token == JsonToken.BEGIN_OBJECT) {
+                if (CIN.equals(name))
+                    result.contentInstance = true;
+                readObject(reader, name, result);
+            } else if (token == JsonToken.BEGIN_ARRAY || token == JsonToken.NULL) {
+                reader.skipValue();
+            } else {
+                String value = token == JsonToken.BOOLEAN ? Boolean.toString(reader.nextBoolean())
+                        : reader.nextString();
+                set(context, name, value, result);
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void set(String context, String name, String value, M2mResponse result) {
+        switch (context) {
+            case RSP:
+            case RQP:
+                switch (name) {
+                    case "rsc":
+                        result.responseCode = Integer.parseInt(value);
+                        break;
+                    case "op":
+                        result.operation = Integer.parseInt(value);
+                        break;
+                    case "rqi":
+                        result.requestId = value;
+                        break;
+                    case "fr":
+                        result.from = value;
+                        break;
+                    case "to":
+                        result.to = value;
+                        break;
+                }
+                break;
+            case CIN:
+                switch (name) {
+                    case "st":
+                        result.stateTag = Long.parseLong(value);
+                        break;
+                    case "lt":
+                        result.lastModified = value;
+                        break;
+                    case "con":
+                        result.content = value;
+                        break;
+                }
+                break;
+            case CNT:
+                // The st and lt of a container change with every new content instance
+                switch (name) {
+                    case "lbl":
+                        result.label = value;
+                        break;
+                    case "st":
+                        result.stateTag = Long.parseLong(value);
+                        break;
+                    case "lt":
+                        result.lastModified = value;
+                        break;
+                }
+                break;
+            case SGN:
+                if ("sur".equals(name))
+                    result.subscription = value;
+                break;
+            case DVI:
+                result.putDeviceInfo(name, value);
+                break;
+        }
+    }
+}
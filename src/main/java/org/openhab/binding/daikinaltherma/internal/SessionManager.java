@@ -0,0 +1,180 @@
+/**
+ * Copyright (c) 2010-2019 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.daikinaltherma.internal;
+
+import java.net.URI;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link SessionManager} keeps a single WebSocket session to the adapter open for as long as the thing is
+ * initialized. The session is kept alive with ping frames and re-established with an exponential backoff when it
+ * is lost.
+ *
+ * @author Karsten Becker - Initial contribution
+ */
+@NonNullByDefault
+public class SessionManager implements WebsocketHelper.ConnectionListener {
+
+    /**
+     * Gets informed whenever the session to the adapter becomes usable or is lost
+     */
+    public interface StatusListener {
+        void sessionOnline();
+
+        void sessionOffline(String reason);
+    }
+
+    private static final long KEEPALIVE_SECONDS = 30;
+    /**
+     * A session that did not receive anything, not even a pong, for this long is considered dead
+     */
+    private static final long IDLE_SECONDS = 3 * KEEPALIVE_SECONDS;
+    private static final long MIN_BACKOFF_SECONDS = 1;
+    private static final long MAX_BACKOFF_SECONDS = 300;
+
+    private final Logger logger = LoggerFactory.getLogger(SessionManager.class);
+
+    private final WebsocketHelper helper;
+    private final URI url;
+    private final ScheduledExecutorService scheduler;
+    private final StatusListener listener;
+
+    private @Nullable ScheduledFuture<?> keepAlive;
+    private @Nullable ScheduledFuture<?> reconnect;
+    private int failures = 0;
+    private boolean running = false;
+    private boolean connecting = false;
+    private volatile boolean online = false;
+
+    public SessionManager(WebsocketHelper helper, URI url, ScheduledExecutorService scheduler,
+            StatusListener listener) {
+        this.helper = helper;
+        this.url = url;
+        this.scheduler = scheduler;
+        this.listener = listener;
+    }
+
+    public synchronized void start() {
+        running = true;
+        helper.setConnectionListener(this);
+        keepAlive = scheduler.scheduleWithFixedDelay(this::keepAlive, KEEPALIVE_SECONDS, KEEPALIVE_SECONDS,
+                TimeUnit.SECONDS);
+        scheduler.execute(this::connect);
+    }
+
+    public synchronized void stop() {
+        running = false;
+        online = false;
+        cancel(keepAlive);
+        cancel(reconnect);
+        helper.disconnect();
+    }
+
+    public boolean isOnline() {
+        return online;
+    }
+
+    /**
+     * Starts to connect without blocking, an unreachable adapter must not hold a thread of the shared scheduler until
+     * the connect times out
+     */
+    private void connect() {
+        synchronized (this) {
+            if (!running || online || connecting)
+                return;
+            connecting = true;
+        }
+        logger.debug("Connecting to:" + url);
+        helper.connectAsync(url).whenComplete((connected, e) -> connected(connected != null && connected));
+    }
+
+    private void connected(boolean connected) {
+        synchronized (this) {
+            connecting = false;
+            if (!running) {
+                helper.disconnect();
+                return;
+            }
+            if (!connected) {
+                scheduleReconnect("Could not connect to " + url);
+                return;
+            }
+            failures = 0;
+            online = true;
+        }
+        listener.sessionOnline();
+    }
+
+    private void keepAlive() {
+        if (!online)
+            return;
+        if (helper.getMillisSinceLastReceived() > TimeUnit.SECONDS.toMillis(IDLE_SECONDS)) {
+            abort("No reply from " + url + " within " + IDLE_SECONDS + " seconds");
+            return;
+        }
+        if (!helper.ping())
+            abort("Failed to ping " + url);
+    }
+
+    /**
+     * Drops a session that stopped responding. A close handshake would never complete with a dead peer, so the
+     * connection is aborted and the reconnect is scheduled right away instead of waiting for the close.
+     */
+    private void abort(String reason) {
+        synchronized (this) {
+            if (!online)
+                return;
+            online = false;
+            if (running)
+                scheduleReconnect(reason);
+        }
+        helper.abort();
+    }
+
+    @Override
+    public void connectionClosed(String reason) {
+        synchronized (this) {
+            // An aborted session already scheduled its reconnect
+            if (!online)
+                return;
+            online = false;
+            if (!running)
+                return;
+            scheduleReconnect(reason);
+        }
+    }
+
+    /**
+     * Must be called while holding the lock
+     */
+    private void scheduleReconnect(String reason) {
+        long delay = Math.min(MAX_BACKOFF_SECONDS, MIN_BACKOFF_SECONDS << Math.min(failures, 16));
+        failures++;
+        logger.debug("Session lost (" + reason + "), reconnecting in " + delay + " seconds");
+        cancel(reconnect);
+        reconnect = scheduler.schedule(this::connect, delay, TimeUnit.SECONDS);
+        scheduler.execute(() -> listener.sessionOffline(reason));
+    }
+
+    private static void cancel(@Nullable ScheduledFuture<?> future) {
+        if (future != null)
+            future.cancel(false);
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2010-2019 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.daikinaltherma.internal;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link SubscriptionManager} keeps track of the oneM2M subscriptions the binding created on the adapter. The
+ * subscriptions are bound to the session, so they are created again after every reconnect.
+ *
+ * @author Karsten Becker - Initial contribution
+ */
+@NonNullByDefault
+public class SubscriptionManager {
+
+    /**
+     * All subscriptions use the same name, so subscribing again after a reconnect doesn't create duplicates
+     */
+    static final String SUBSCRIPTION_NAME = "openhab";
+
+    private final Logger logger = LoggerFactory.getLogger(SubscriptionManager.class);
+
+    private final WebsocketHelper helper;
+
+    private final Set<String> subscribed = ConcurrentHashMap.newKeySet();
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    /**
+     * Items the adapter refused to subscribe to, they are polled instead
+     */
+    private final Set<String> unsupported = ConcurrentHashMap.newKeySet();
+
+    public SubscriptionManager(WebsocketHelper helper) {
+        this.helper = helper;
+    }
+
+    /**
+     * Subscribes to all given items that are not subscribed yet
+     */
+    public void subscribe(Collection<String> items) {
+        for (String item : items) {
+            if (subscribed.contains(item) || unsupported.contains(item) || !pending.add(item))
+                continue;
+            helper.subscribe(item, SUBSCRIPTION_NAME).whenComplete((rsp, e) -> {
+                pending.remove(item);
+                if (e != null)
+                    return;
+                int code = rsp.getResponseCode();
+                if (code == M2mResponse.RSC_CREATED || code == M2mResponse.RSC_CONFLICT) {
+                    logger.debug("Subscribed to:" + item);
+                    subscribed.add(item);
+                } else {
+                    logger.debug("Adapter refused subscription to:" + item + " with code " + code);
+                    unsupported.add(item);
+                }
+            });
+        }
+    }
+
+    public boolean isSubscribed(String item) {
+        return subscribed.contains(item);
+    }
+
+    /**
+     * Forgets all subscriptions, must be called when the session is lost
+     */
+    public void reset() {
+        subscribed.clear();
+    }
+}
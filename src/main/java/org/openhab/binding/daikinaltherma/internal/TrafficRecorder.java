@@ -0,0 +1,195 @@
+/**
+ * Copyright (c) 2010-2019 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.daikinaltherma.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.smarthome.config.core.ConfigConstants;
+import org.eclipse.smarthome.core.thing.ThingUID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link TrafficRecorder} writes the replies of the adapter to files, so the traffic of a real adapter can be
+ * replayed by the simulator of the tests. Recording never blocks the caller: the replies are put into a lock-free ring
+ * buffer and written by a background task, when the buffer is full they are dropped.
+ * <p>
+ * Every line has the form <code>@&lt;time&gt; &lt;latency ms&gt; &lt;item&gt; &lt;frame&gt;</code>. The file is
+ * rotated when it reaches its maximum size.
+ *
+ * @author Karsten Becker - Initial contribution
+ */
+@NonNullByDefault
+public class TrafficRecorder {
+
+    private static class Record {
+        final long time;
+        final long latencyMillis;
+        final String item;
+        final String frame;
+
+        Record(long time, long latencyMillis, String item, String frame) {
+            this.time = time;
+            this.latencyMillis = latencyMillis;
+            this.item = item;
+            this.frame = frame;
+        }
+    }
+
+    private static final int CAPACITY = 1024;
+    private static final long WRITE_INTERVAL_MILLIS = 500;
+    private static final long MAX_FILE_BYTES = 4 * 1024 * 1024;
+    private static final int MAX_FILES = 5;
+
+    private final Logger logger = LoggerFactory.getLogger(TrafficRecorder.class);
+
+    private final AtomicReferenceArray<@Nullable Record> slots = new AtomicReferenceArray<>(CAPACITY);
+    /**
+     * The next slot to be claimed by a producer
+     */
+    private final AtomicLong tail = new AtomicLong();
+    /**
+     * The next slot to be written, only advanced by the writer
+     */
+    private volatile long head = 0;
+    private final AtomicLong dropped = new AtomicLong();
+    private long reported = 0;
+
+    private final File file;
+    private final ScheduledExecutorService scheduler;
+    private @Nullable ScheduledFuture<?> writer;
+
+    public TrafficRecorder(File file, ScheduledExecutorService scheduler) {
+        this.file = file;
+        this.scheduler = scheduler;
+    }
+
+    public synchronized void start() {
+        if (writer == null)
+            writer = scheduler.scheduleWithFixedDelay(this::drain, WRITE_INTERVAL_MILLIS, WRITE_INTERVAL_MILLIS,
+                    TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background writer after writing what is buffered
+     */
+    public synchronized void stop() {
+        ScheduledFuture<?> running = writer;
+        if (running != null)
+            running.cancel(false);
+        writer = null;
+        scheduler.execute(this::drain);
+    }
+
+    /**
+     * Records a reply, returns false if it was dropped because the buffer is full
+     */
+    public boolean record(String item, long latencyMillis, String frame) {
+        while (true) {
+            long claim = tail.get();
+            if (claim - head >= CAPACITY) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            if (tail.compareAndSet(claim, claim + 1)) {
+                slots.set((int) (claim % CAPACITY),
+                        new Record(System.currentTimeMillis(), latencyMillis, item, frame));
+                return true;
+            }
+        }
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Writes all published records, only ever runs on one thread at a time
+     */
+    private synchronized void drain() {
+        long next = head;
+        Record record = slots.get((int) (next % CAPACITY));
+        if (record == null)
+            return;
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            try (OutputStream out = Files.newOutputStream(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND); Writer w = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+                // A claimed slot that is still empty is being published right now, it is written next time
+                while (record != null) {
+                    w.write('@');
+                    w.write(Long.toString(record.time));
+                    w.write(' ');
+                    w.write(Long.toString(record.latencyMillis));
+                    w.write(' ');
+                    w.write(record.item);
+                    w.write(' ');
+                    w.write(record.frame);
+                    w.write('\n');
+                    slots.set((int) (next % CAPACITY), null);
+                    head = ++next;
+                    record = slots.get((int) (next % CAPACITY));
+                }
+            }
+            if (file.length() > MAX_FILE_BYTES)
+                rotate();
+        } catch (IOException e) {
+            logger.warn("Failed to write the traffic recording " + file + ": " + e.getMessage());
+            // Don't let the buffer fill up with records that can't be written
+            while (record != null) {
+                slots.set((int) (next % CAPACITY), null);
+                head = ++next;
+                record = slots.get((int) (next % CAPACITY));
+            }
+        }
+        long lost = dropped.get();
+        if (lost > reported) {
+            logger.debug("Dropped " + (lost - reported) + " frames because the recording buffer was full");
+            reported = lost;
+        }
+    }
+
+    /**
+     * Returns the file the traffic of the thing is recorded to, in the user data folder
+     */
+    public static File getFile(ThingUID thing) {
+        return new File(ConfigConstants.getUserDataFolder() + File.separator
+                + DaikinAlthermaBindingConstants.BINDING_ID + File.separator + "recordings" + File.separator
+                + thing.getAsString().replace(':', '_') + ".rec");
+    }
+
+    private void rotate() throws IOException {
+        for (int i = MAX_FILES - 1; i > 0; i--) {
+            File from = new File(file.getPath() + "." + i);
+            if (from.exists())
+                Files.move(from.toPath(), new File(file.getPath() + "." + (i + 1)).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.move(file.toPath(), new File(file.getPath() + ".1").toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2010-2019 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.daikinaltherma.internal;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * The {@link ValueHistory} keeps the most recent values of a numeric channel in a ring buffer of primitive arrays.
+ * The average, minimum and maximum of the buffered values are updated with each new value instead of scanning the
+ * buffer: the sum is kept running, the candidates for minimum and maximum are kept in monotonic queues of sample
+ * numbers. A value that is read again, e.g. on a refresh or from a cached response, is only added once if the
+ * state tag of its content instance is passed. Not thread safe, callers have to synchronize.
+ *
+ * @author Karsten Becker - Initial contribution
+ */
+@NonNullByDefault
+public class ValueHistory {
+
+    private static final double MILLIS_PER_HOUR = 3_600_000;
+
+    private final double[] values;
+    private final long[] times;
+
+    /**
+     * The numbers of the samples that may still become the minimum or maximum, oldest first. The first one is the
+     * current minimum or maximum.
+     */
+    private final long[] minCandidates;
+    private final long[] maxCandidates;
+    private int minHead;
+    private int minSize;
+    private int maxHead;
+    private int maxSize;
+
+    /**
+     * The number of samples that were added so far, the next sample gets this number
+     */
+    private long added;
+
+    private double sum;
+
+    /**
+     * The state tag of the last added value, -1 if unknown
+     */
+    private long lastStateTag = -1;
+
+    public ValueHistory(int size) {
+        if (size < 1)
+            throw new IllegalArgumentException("The history needs room for at least one value");
+        values = new double[size];
+        times = new long[size];
+        minCandidates = new long[size];
+        maxCandidates = new long[size];
+    }
+
+    /**
+     * Adds a value that was read at the given time in milliseconds, replacing the oldest one if the buffer is full
+     */
+    public void add(long time, double value) {
+        add(time, value, -1);
+    }
+
+    /**
+     * Adds a value like {@link #add(long, double)} unless it has the same state tag as the last added value.
+     * Returns false if the value was already added.
+     *
+     * @param stateTag the st of the content instance that holds the value, -1 if the adapter doesn't report it
+     */
+    public boolean add(long time, double value, long stateTag) {
+        if (stateTag >= 0 && stateTag == lastStateTag)
+            return false;
+        lastStateTag = stateTag;
+        int capacity = values.length;
+        long sample = added++;
+        int slot = slot(sample);
+        if (sample >= capacity)
+            sum -= values[slot];
+        values[slot] = value;
+        times[slot] = time;
+        sum += value;
+        if (slot == capacity - 1)
+            resum();
+        long oldest = sample - capacity;
+        while (minSize > 0 && minCandidates[minHead] <= oldest) {
+            minHead = (minHead + 1) % capacity;
+            minSize--;
+        }
+        while (minSize > 0 && values[slot(minCandidates[(minHead + minSize - 1) % capacity])] >= value)
+            minSize--;
+        minCandidates[(minHead + minSize++) % capacity] = sample;
+        while (maxSize > 0 && maxCandidates[maxHead] <= oldest) {
+            maxHead = (maxHead + 1) % capacity;
+            maxSize--;
+        }
+        while (maxSize > 0 && values[slot(maxCandidates[(maxHead + maxSize - 1) % capacity])] <= value)
+            maxSize--;
+        maxCandidates[(maxHead + maxSize++) % capacity] = sample;
+        return true;
+    }
+
+    /**
+     * The running sum drifts with every subtraction, so it is computed again each time the buffer wraps around
+     */
+    private void resum() {
+        double total = 0;
+        for (double value : values) {
+            total += value;
+        }
+        sum = total;
+    }
+
+    private int slot(long sample) {
+        return (int) (sample % values.length);
+    }
+
+    /**
+     * Returns the number of buffered values
+     */
+    public int size() {
+        return (int) Math.min(added, values.length);
+    }
+
+    /**
+     * Returns the average of the buffered values, NaN if there are none
+     */
+    public double getAverage() {
+        return added == 0 ? Double.NaN : sum / size();
+    }
+
+    public double getMinimum() {
+        return minSize == 0 ? Double.NaN : values[slot(minCandidates[minHead])];
+    }
+
+    public double getMaximum() {
+        return maxSize == 0 ? Double.NaN : values[slot(maxCandidates[maxHead])];
+    }
+
+    /**
+     * Returns the change per hour between the oldest and the newest buffered value, NaN if they were read at the
+     * same time
+     */
+    public double getRatePerHour() {
+        if (added < 2)
+            return Double.NaN;
+        int newest = slot(added - 1);
+        int oldest = slot(added - size());
+        long millis = times[newest] - times[oldest];
+        if (millis <= 0)
+            return Double.NaN;
+        return (values[newest] - values[oldest]) * MILLIS_PER_HOUR / millis;
+    }
+}
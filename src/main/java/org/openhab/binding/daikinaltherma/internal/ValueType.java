@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2010-2019 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package org.openhab.binding.daikinaltherma.internal;
+
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+import com.google.gson.JsonPrimitive;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.eclipse.smarthome.core.library.types.DateTimeType;
+import org.eclipse.smarthome.core.library.types.DecimalType;
+import org.eclipse.smarthome.core.library.types.OnOffType;
+import org.eclipse.smarthome.core.library.types.QuantityType;
+import org.eclipse.smarthome.core.library.types.StringType;
+import org.eclipse.smarthome.core.library.unit.SIUnits;
+import org.eclipse.smarthome.core.thing.type.ChannelTypeUID;
+import org.eclipse.smarthome.core.types.Command;
+import org.eclipse.smarthome.core.types.State;
+import org.eclipse.smarthome.core.types.UnDefType;
+
+/**
+ * The {@link ValueType} is the type of the value of an item, as inferred from the UnitProfile during discovery. It
+ * determines the channel type and converts between the content of the adapter and states or commands.
+ *
+ * @author Karsten Becker - Initial contribution
+ */
+@NonNullByDefault
+public enum ValueType {
+    NUMBER("Number", DaikinAlthermaBindingConstants.CHANNEL_TYPE_NUMBER),
+    TEMPERATURE("Number:Temperature", DaikinAlthermaBindingConstants.CHANNEL_TYPE_TEMPERATURE),
+    SWITCH("Switch", DaikinAlthermaBindingConstants.CHANNEL_TYPE_SWITCH),
+    DATETIME("DateTime", DaikinAlthermaBindingConstants.CHANNEL_TYPE_DATETIME),
+    STRING("String", DaikinAlthermaBindingConstants.CHANNEL_TYPE_STRING);
+
+    /**
+     * The adapter sends times like 20190831T215015Z
+     */
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmssX");
+
+    private final String itemType;
+    private final ChannelTypeUID channelType;
+
+    private ValueType(String itemType, ChannelTypeUID channelType) {
+        this.itemType = itemType;
+        this.channelType = channelType;
+    }
+
+    public String getItemType() {
+        return itemType;
+    }
+
+    public ChannelTypeUID getChannelType() {
+        return channelType;
+    }
+
+    /**
+     * Converts the content of a m2m:cin to a state. Returns {@link UnDefType#UNDEF} if the content doesn't fit the
+     * type.
+     */
+    public State parse(String content) {
+        try {
+            switch (this) {
+                case NUMBER:
+                    return new DecimalType(new BigDecimal(content));
+                case TEMPERATURE:
+                    return new QuantityType<>(new BigDecimal(content), SIUnits.CELSIUS);
+                case SWITCH:
+                    return parseSwitch(content);
+                case DATETIME:
+                    return new DateTimeType(ZonedDateTime.parse(content, DATE_TIME));
+                default:
+                    return new StringType(content);
+            }
+        } catch (NumberFormatException | DateTimeParseException e) {
+            return UnDefType.UNDEF;
+        }
+    }
+
+    /**
+     * Either 0/1 for states or on/standby for the power, anything else is not a switch
+     */
+    private static State parseSwitch(String content) {
+        if ("on".equalsIgnoreCase(content) || "1".equals(content))
+            return OnOffType.ON;
+        if ("off".equalsIgnoreCase(content) || "standby".equalsIgnoreCase(content) || "0".equals(content))
+            return OnOffType.OFF;
+        return UnDefType.UNDEF;
+    }
+
+    /**
+     * Converts a command to the JSON value of the con of a new m2m:cin. The current content tells whether the
+     * adapter uses 0/1 or on/standby for a switch. Returns null if the command can't be written to this type.
+     */
+    public @Nullable String format(Command command, @Nullable String current) {
+        switch (this) {
+            case NUMBER:
+                if (command instanceof QuantityType)
+                    return ((QuantityType<?>) command).toBigDecimal().toPlainString();
+                if (command instanceof DecimalType)
+                    return ((DecimalType) command).toBigDecimal().toPlainString();
+                return null;
+            case TEMPERATURE:
+                if (command instanceof QuantityType) {
+                    QuantityType<?> celsius = ((QuantityType<?>) command).toUnit(SIUnits.CELSIUS);
+                    return celsius == null ? null : celsius.toBigDecimal().toPlainString();
+                }
+                if (command instanceof DecimalType)
+                    return ((DecimalType) command).toBigDecimal().toPlainString();
+                return null;
+            case SWITCH:
+                if (!(command instanceof OnOffType))
+                    return null;
+                if (current != null && (current.equals("0") || current.equals("1")))
+                    return command == OnOffType.ON ? "1" : "0";
+                return new JsonPrimitive(command == OnOffType.ON ? "on" : "standby").toString();
+            case STRING:
+                return command instanceof StringType ? new JsonPrimitive(command.toString()).toString() : null;
+            default:
+                return null;
+        }
+    }
+}
@@ -1,139 +1,618 @@
 package org.openhab.binding.daikinaltherma.internal;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.PrintStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Optional;
-import java.util.Random;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
 
-import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.WebSocketListener;
+import org.eclipse.jetty.websocket.api.WebSocketPingPongListener;
 import org.eclipse.jetty.websocket.client.WebSocketClient;
+import org.eclipse.smarthome.core.common.ThreadPoolManager;
+import org.openhab.binding.daikinaltherma.MetricsSink;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * The {@link WebsocketHelper} sends oneM2M requests to the adapter and matches the replies to their requests by the
+ * request identifier (rqi). Up to {@link #setMaxInFlight(int)} requests are sent back-to-back without waiting for
+ * the previous reply, the remaining ones are queued until a slot becomes free. Queued requests are sent in the order
+ * of their {@link RequestPriority}, a retrieve of an item that is already queued shares the queued request.
+ *
+ * @author Karsten Becker - Initial contribution
+ */
 @NonNullByDefault
-public class WebsocketHelper implements WebSocketListener {
+public class WebsocketHelper implements WebSocketListener, WebSocketPingPongListener {
+
+    /**
+     * Gets informed about new values of items the binding subscribed to
+     */
+    public interface NotificationListener {
+        /**
+         * @param item the item below the MNAE node
+         * @param content the notification, which contains the m2m:cin of the new value
+         */
+        void notification(String item, M2mResponse content);
+    }
+
+    /**
+     * Gets informed when an established session is closed, either by the adapter or because of an error
+     */
+    public interface ConnectionListener {
+        void connectionClosed(String reason);
+    }
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 8;
+
+    private static final long REPLY_TIMEOUT_SECONDS = 5;
+    private static final long CONNECT_TIMEOUT_SECONDS = 10;
+
+    static final String ITEM_PREFIX = "/[0]/MNAE/";
+    private static final String ORIGINATOR_JSON = "\"/OpenHab\"";
+
+    private static final int OP_CREATE = 1;
+    static final int OP_RETRIEVE = 2;
+    private static final int OP_NOTIFY = 5;
+    private static final String DEVICE_INFO = "/[0]/MNCSE-node/deviceInfo";
+    /**
+     * Result content 4, the attributes and the child resources of the retrieved resource
+     */
+    private static final String WITH_CHILDREN = ",\"rcn\":4";
 
     private final Logger logger = LoggerFactory.getLogger(WebsocketHelper.class);
 
     private WebSocketClient webSocketClient;
 
     @Nullable
-    private Session session;
+    private volatile Session session;
+
+    private volatile CompletableFuture<Boolean> connecting = CompletableFuture.completedFuture(false);
+
+    /**
+     * Requests that have been sent and are waiting for their reply, keyed by the number of their rqi
+     */
+    private final Map<Long, PendingRequest> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Guards the queues and {@link #inFlight}
+     */
+    private final Object queueLock = new Object();
+
+    /**
+     * Requests that are waiting for a free slot in the in-flight window, by priority
+     */
+    private final Map<RequestPriority, Queue<PendingRequest>> queues = new EnumMap<>(RequestPriority.class);
+
+    /**
+     * The queued retrieves, keyed by their target
+     */
+    private final Map<String, PendingRequest> queuedReads = new HashMap<>();
+
+    private int inFlight = 0;
+
+    /**
+     * The templates of the retrieves that are repeated with every poll, by item. The latest templates retrieve the
+     * la of the item, the children templates the item with its child resources.
+     */
+    private final Map<String, FrameTemplate> retrieveTemplates = new ConcurrentHashMap<>();
+    private final Map<String, FrameTemplate> latestTemplates = new ConcurrentHashMap<>();
+    private final Map<String, FrameTemplate> childrenTemplates = new ConcurrentHashMap<>();
+
+    /**
+     * The rqi of the next request. Each session starts at a random number, so a late reply from an earlier session
+     * can't be taken for the reply to a new request.
+     */
+    private final AtomicLong nextRqi = new AtomicLong(ThreadLocalRandom.current().nextLong());
 
-    private BlockingQueue<String> receivedMessages = new LinkedBlockingQueue<>();
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
 
-    private static final boolean CAPTURE_RESPONSE = false;
+    private final Object sendLock = new Object();
+
+    private volatile long lastReceived = System.currentTimeMillis();
+
+    private volatile BindingMetrics metrics = new BindingMetrics("", MetricsSink.NONE);
+
+    @Nullable
+    private ConnectionListener connectionListener;
 
     @Nullable
-    private PrintStream ps=null;
+    private NotificationListener notificationListener;
+
+    private final ScheduledExecutorService timeoutScheduler = ThreadPoolManager
+            .getScheduledPool(DaikinAlthermaBindingConstants.BINDING_ID);
+
+    private volatile @Nullable TrafficRecorder recorder;
+
+    /**
+     * Whether the adapter returns the child resources of a container, null until it was tried in this session
+     */
+    private volatile @Nullable Boolean childrenSupported;
 
     public WebsocketHelper(WebSocketClient webSocketClient) {
         this.webSocketClient = webSocketClient;
-        if (CAPTURE_RESPONSE) {
-            try {
-                this.ps = new PrintStream("responseCapture.txt");
-            } catch (FileNotFoundException e) {
-                e.printStackTrace();
+        for (RequestPriority priority : RequestPriority.values()) {
+            queues.put(priority, new ArrayDeque<>());
+        }
+    }
+
+    private static class PendingRequest {
+        final String item;
+        final FrameTemplate template;
+        final long rqi;
+        /**
+         * The target of a plain retrieve, which can be shared. Null for all other requests.
+         */
+        final @Nullable String readKey;
+        final CompletableFuture<M2mResponse> future = new CompletableFuture<>();
+        @Nullable
+        ScheduledFuture<?> timeout;
+        long sentNanos;
+        RequestPriority priority;
+        long deadlineNanos;
+
+        PendingRequest(FrameTemplate template, long rqi, RequestPriority priority) {
+            this.item = template.getItem();
+            this.template = template;
+            this.rqi = rqi;
+            this.readKey = template.getReadKey();
+            this.priority = priority;
+            this.deadlineNanos = System.nanoTime() + priority.getDeadlineNanos();
+        }
+    }
+
+    /**
+     * Builds the m2m:rqp frame of a request, the content is appended to the fields of the request. Requests are sent
+     * from a {@link FrameTemplate} of the frame.
+     */
+    static String buildFrame(int op, String to, String rqi, String content) {
+        return "{\"m2m:rqp\":{\"op\":" + op + ",\"to\":\"" + to + "\",\"fr\":" + ORIGINATOR_JSON + ",\"rqi\":\"" + rqi
+                + "\"" + content + "}}";
+    }
+
+    public void setConnectionListener(@Nullable ConnectionListener connectionListener) {
+        this.connectionListener = connectionListener;
+    }
+
+    public void setNotificationListener(@Nullable NotificationListener notificationListener) {
+        this.notificationListener = notificationListener;
+    }
+
+    public void setMetrics(BindingMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Records all replies with the given recorder, or stops recording if it is null
+     */
+    public void setRecorder(@Nullable TrafficRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Sets the number of requests that may be sent without having received their reply yet.
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        synchronized (queueLock) {
+            this.maxInFlight = Math.max(1, maxInFlight);
+        }
+        dispatch();
+    }
+
+    /**
+     * Retrieves the given item below the MNAE node. The future completes with the decoded reply, or
+     * exceptionally when there was no reply within {@value #REPLY_TIMEOUT_SECONDS} seconds or the session is not
+     * usable. Failures are already logged.
+     */
+    public CompletableFuture<M2mResponse> query(String item) {
+        return query(item, RequestPriority.POLL);
+    }
+
+    public CompletableFuture<M2mResponse> query(String item, RequestPriority priority) {
+        FrameTemplate template = retrieveTemplates.computeIfAbsent(item,
+                k -> new FrameTemplate(k, OP_RETRIEVE, ITEM_PREFIX + k, ""));
+        return submit(request(template, priority));
+    }
+
+    private PendingRequest request(FrameTemplate template, RequestPriority priority) {
+        return new PendingRequest(template, nextRqi.getAndIncrement(), priority);
+    }
+
+    /**
+     * Queries all items pipelined. The map of the future has the same iteration order as the given items and
+     * contains an empty value for every item that could not be retrieved. It never completes exceptionally.
+     */
+    public CompletableFuture<Map<String, Optional<M2mResponse>>> queryAll(Collection<String> items) {
+        return queryAll(items, RequestPriority.POLL);
+    }
+
+    public CompletableFuture<Map<String, Optional<M2mResponse>>> queryAll(Collection<String> items,
+            RequestPriority priority) {
+        Map<String, CompletableFuture<Optional<M2mResponse>>> futures = new LinkedHashMap<>();
+        for (String item : items) {
+            futures.put(item, query(item, priority).handle((rsp, e) -> Optional.ofNullable(e == null ? rsp : null)));
+        }
+        return collect(futures);
+    }
+
+    /**
+     * Waits for all futures, the map of the result has the same iteration order
+     */
+    private static CompletableFuture<Map<String, Optional<M2mResponse>>> collect(
+            Map<String, CompletableFuture<Optional<M2mResponse>>> futures) {
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            Map<String, Optional<M2mResponse>> result = new LinkedHashMap<>();
+            for (Entry<String, CompletableFuture<Optional<M2mResponse>>> entry : futures.entrySet()) {
+                result.put(entry.getKey(), entry.getValue().join());
             }
+            return result;
+        });
+    }
+
+    /**
+     * Retrieves the latest value of the given items. If the adapter supports it, all items below an index of the MNAE
+     * node are retrieved with one request that includes the child resources of the index, otherwise with one
+     * request per item. The map of the future has the same iteration order as the given items and contains an empty
+     * value for every item that could not be retrieved. It never completes exceptionally.
+     */
+    public CompletableFuture<Map<String, Optional<M2mResponse>>> queryLatest(Collection<String> items) {
+        if (Boolean.FALSE.equals(childrenSupported))
+            return queryEach(items);
+        Map<String, List<String>> byIndex = new LinkedHashMap<>();
+        for (String item : items) {
+            int slash = item.indexOf('/');
+            byIndex.computeIfAbsent(slash < 0 ? item : item.substring(0, slash), k -> new ArrayList<>()).add(item);
+        }
+        List<CompletableFuture<Map<String, Optional<M2mResponse>>>> parts = new ArrayList<>();
+        for (Entry<String, List<String>> entry : byIndex.entrySet()) {
+            // A single item is cheaper to retrieve on its own
+            if (entry.getValue().size() > 1)
+                parts.add(queryChildren(entry.getKey(), entry.getValue()));
+            else
+                parts.add(queryEach(entry.getValue()));
         }
+        return CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            Map<String, Optional<M2mResponse>> values = new HashMap<>();
+            for (CompletableFuture<Map<String, Optional<M2mResponse>>> part : parts) {
+                values.putAll(part.join());
+            }
+            Map<String, Optional<M2mResponse>> result = new LinkedHashMap<>();
+            for (String item : items) {
+                result.put(item, values.getOrDefault(item, Optional.empty()));
+            }
+            return result;
+        });
     }
 
-    synchronized public Optional<JsonObject> doQuery(String item) {
-        Optional<String> response = null;
+    /**
+     * Retrieves the items below the index in one request. The reply contains the whole tree below the index, so an
+     * item that is not part of it has no value.
+     */
+    private CompletableFuture<Map<String, Optional<M2mResponse>>> queryChildren(String index, List<String> items) {
+        FrameTemplate template = childrenTemplates.computeIfAbsent(index,
+                k -> new FrameTemplate(k, OP_RETRIEVE, ITEM_PREFIX + k, WITH_CHILDREN));
+        PendingRequest request = request(template, RequestPriority.POLL);
+        return submit(request).handle((rsp, e) -> {
+            Map<String, M2mResponse> children = Collections.emptyMap();
+            if (rsp != null && rsp.isOk()) {
+                try {
+                    children = ResponseDecoder.decodeChildren(rsp.toString(), index);
+                } catch (IOException ex) {
+                    logger.debug("Failed to decode the child resources of " + index + ": " + ex.getMessage());
+                }
+            }
+            if (children.isEmpty()) {
+                // A timeout says nothing about the support, the next round tries again
+                if (e == null && childrenSupported == null) {
+                    logger.debug("Adapter doesn't return child resources, retrieving the items one by one");
+                    childrenSupported = false;
+                }
+                return queryEach(items);
+            }
+            childrenSupported = true;
+            Map<String, Optional<M2mResponse>> result = new HashMap<>();
+            for (String item : items) {
+                result.put(item, Optional.ofNullable(children.get(item)));
+            }
+            return CompletableFuture.completedFuture(result);
+        }).thenCompose(f -> f);
+    }
+
+    /**
+     * Retrieves the latest value of every item with a request of its own
+     */
+    private CompletableFuture<Map<String, Optional<M2mResponse>>> queryEach(Collection<String> items) {
+        Map<String, CompletableFuture<Optional<M2mResponse>>> futures = new LinkedHashMap<>();
+        for (String item : items) {
+            FrameTemplate template = latestTemplates.computeIfAbsent(item,
+                    k -> new FrameTemplate(k + "/la", OP_RETRIEVE, ITEM_PREFIX + k + "/la", ""));
+            futures.put(item, submit(request(template, RequestPriority.POLL))
+                    .handle((rsp, e) -> Optional.ofNullable(e == null ? rsp : null)));
+        }
+        return collect(futures);
+    }
+
+    /**
+     * Creates a subscription with the given name on the item, so that the adapter notifies about new content
+     * instances. The future completes with the decoded reply.
+     */
+    public CompletableFuture<M2mResponse> subscribe(String item, String name) {
+        // net 3: create of a direct child resource, which is how the adapter stores a new value
+        String content = ",\"ty\":23,\"pc\":{\"m2m:sub\":{\"rn\":\"" + name + "\",\"enc\":{\"net\":[3]},\"nu\":["
+                + ORIGINATOR_JSON + "],\"nct\":1}}";
+        return submit(request(new FrameTemplate(item, OP_CREATE, ITEM_PREFIX + item, content), RequestPriority.POLL));
+    }
+
+    /**
+     * Writes a new value to the item by creating a content instance, the value has to be valid JSON. The future
+     * completes with the decoded reply.
+     */
+    public CompletableFuture<M2mResponse> write(String item, String value) {
+        String content = ",\"ty\":4,\"pc\":{\"m2m:cin\":{\"con\":" + value + ",\"cnf\":\"text/plain:0\"}}";
+        return submit(request(new FrameTemplate(item, OP_CREATE, ITEM_PREFIX + item, content), RequestPriority.WRITE));
+    }
+
+    /**
+     * Retrieves the device info of the adapter. The future completes exceptionally if the reply doesn't contain it.
+     */
+    public CompletableFuture<M2mResponse> discover() {
+        return submit(request(new FrameTemplate(DEVICE_INFO, OP_RETRIEVE, DEVICE_INFO, ""), RequestPriority.DISCOVERY))
+                .thenApply(rsp -> {
+            logger.trace("Discovery Response:" + rsp);
+            if (!rsp.isOk() || rsp.getDeviceInfo().isEmpty())
+                throw new CompletionException(new IOException("No device info in reply:" + rsp));
+            return rsp;
+        });
+    }
+
+    private void fail(PendingRequest request, Throwable cause) {
+        metrics.increment(cause instanceof TimeoutException ? BindingMetrics.TIMEOUTS : BindingMetrics.ERRORS);
+        if (cause instanceof TimeoutException) {
+            logger.warn("Did not receive a reply within " + REPLY_TIMEOUT_SECONDS + " seconds for:" + request.item);
+        } else if (cause instanceof IOException) {
+            logger.debug("Tried to query:" + request.item + " but " + cause.getMessage());
+        } else {
+            logger.warn("An exception occured while trying to access:" + request.item, cause);
+        }
+        request.future.completeExceptionally(cause);
+    }
+
+    /**
+     * Queues the request. A retrieve of a target that is already queued returns the future of the queued request,
+     * which is moved up if the new one is more urgent. The request fails right away if its queue is full.
+     */
+    private CompletableFuture<M2mResponse> submit(PendingRequest request) {
+        String readKey = request.readKey;
+        PendingRequest queued;
+        synchronized (queueLock) {
+            queued = readKey == null ? null : queuedReads.get(readKey);
+            if (queued != null) {
+                if (request.priority.compareTo(queued.priority) < 0) {
+                    queues.get(queued.priority).remove(queued);
+                    queued.priority = request.priority;
+                    queues.get(queued.priority).add(queued);
+                }
+                queued.deadlineNanos = Math.max(queued.deadlineNanos, request.deadlineNanos);
+                return queued.future;
+            }
+            Queue<PendingRequest> queue = queues.get(request.priority);
+            if (queue.size() < request.priority.getMaxQueued()) {
+                queue.add(request);
+                if (readKey != null)
+                    queuedReads.put(readKey, request);
+                queued = request;
+            }
+        }
+        if (queued == null) {
+            metrics.increment(BindingMetrics.REJECTED);
+            logger.debug("Too many queued " + request.priority + " requests, rejecting:" + request.item);
+            request.future.completeExceptionally(new IOException("Too many queued requests"));
+            return request.future;
+        }
+        dispatch();
+        return request.future;
+    }
+
+    /**
+     * Takes the most urgent queued request. Requests that are past their deadline are taken out and added to the
+     * expired ones. Must hold the queueLock.
+     */
+    private @Nullable PendingRequest nextRequest(List<PendingRequest> expired) {
+        long now = System.nanoTime();
+        for (Queue<PendingRequest> queue : queues.values()) {
+            PendingRequest request;
+            while ((request = queue.poll()) != null) {
+                String readKey = request.readKey;
+                if (readKey != null)
+                    queuedReads.remove(readKey, request);
+                if (now - request.deadlineNanos > 0)
+                    expired.add(request);
+                else
+                    return request;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sends queued requests as long as the in-flight window permits
+     */
+    private void dispatch() {
+        List<PendingRequest> expired = new ArrayList<>();
         try {
-            response = sendQuery(item);
-            if (!response.isPresent())
-                return Optional.empty();
-            if (CAPTURE_RESPONSE) {
-                ps.println(item + " " + response.get());
-                ps.flush();
-            }
-            JsonElement ele = new JsonParser().parse(response.get());
-            if (!ele.isJsonObject()) {
-                logger.warn("Json response is not an obj:" + response);
-                return Optional.empty();
-            }
-            JsonObject obj = ele.getAsJsonObject();
-            JsonElement rsp = obj.get("m2m:rsp");
-            if (rsp == null || !rsp.isJsonObject()) {
-                logger.warn("Expected a m2m:rsp Json object, but got:" + response);
-                return Optional.empty();
-            }
-            return Optional.of(rsp.getAsJsonObject());
-        } catch (InterruptedException e) {
-            logger.warn("Did not receive a reply within 5 seconds for:" + item);
-            return Optional.empty();
-        } catch (Exception e) {
-            if (response != null)
-                logger.warn("An exception occured while trying to access:" + item + " response was:" + response, e);
-            else
-                logger.warn("An exception occured while trying to access:" + item, e);
-            return Optional.empty();
+            while (true) {
+                PendingRequest request;
+                int depth;
+                synchronized (queueLock) {
+                    if (inFlight >= maxInFlight)
+                        return;
+                    request = nextRequest(expired);
+                    if (request == null)
+                        return;
+                    depth = ++inFlight;
+                }
+                metrics.increment(BindingMetrics.REQUESTS);
+                metrics.gauge(BindingMetrics.IN_FLIGHT, depth);
+                request.sentNanos = System.nanoTime();
+                pending.put(request.rqi, request);
+                request.timeout = timeoutScheduler.schedule(() -> {
+                    if (release(request)) {
+                        fail(request, new TimeoutException());
+                        dispatch();
+                    }
+                }, REPLY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                try {
+                    sendFrame(request.template.fill(request.rqi));
+                } catch (IOException | RuntimeException e) {
+                    if (release(request))
+                        fail(request, e);
+                }
+            }
+        } finally {
+            for (PendingRequest request : expired) {
+                metrics.increment(BindingMetrics.EXPIRED);
+                logger.debug("Discarding the " + request.priority + " request for " + request.item
+                        + ", it waited too long to be sent");
+                request.future.completeExceptionally(new TimeoutException("Expired in the queue"));
+            }
         }
     }
 
-    public Optional<String> sendQuery(String item) throws IOException, InterruptedException {
-        String query = "{\"m2m:rqp\":{\"op\":2,\"to\":\"/[0]/MNAE/" + item + "\",\"fr\":\"/OpenHab\",\"rqi\":\""
-                + randomString() + "\"}}";
-        if (session == null || !session.isOpen()) {
-            logger.warn("Tried to query:" + item + " but session was null or not open");
-            return Optional.empty();
+    /**
+     * Removes the request from the in-flight window. Returns false if it was released before, which happens when a
+     * reply arrives just as the request times out.
+     */
+    private boolean release(PendingRequest request) {
+        if (!pending.remove(request.rqi, request))
+            return false;
+        ScheduledFuture<?> timeout = request.timeout;
+        if (timeout != null)
+            timeout.cancel(false);
+        int depth;
+        synchronized (queueLock) {
+            depth = --inFlight;
         }
-        String response;
-        session.getRemote().sendString(query);
-        response = receivedMessages.poll(5, TimeUnit.SECONDS);
-        return Optional.of(response);
+        metrics.gauge(BindingMetrics.IN_FLIGHT, depth);
+        return true;
     }
 
-    public Optional<String> sendDiscovery() throws IOException, InterruptedException {
-        String query = "{\"m2m:rqp\":{\"op\":2,\"to\":\"/[0]/MNCSE-node/deviceInfo\",\"fr\":\"/OpenHab\",\"rqi\":\""
-                + randomString() + "\"}}";
-        if (session == null || !session.isOpen()) {
-            logger.warn("Tried to run discovery but session was null or not open");
-            return Optional.empty();
+    protected void sendFrame(String frame) throws IOException {
+        synchronized (sendLock) {
+            Session session = this.session;
+            if (session == null || !session.isOpen())
+                throw new IOException("session was null or not open");
+            session.getRemote().sendString(frame);
         }
-        String response;
-        session.getRemote().sendString(query);
-        response = receivedMessages.poll(5, TimeUnit.SECONDS);
-        logger.trace("Discovery Response:"+response);
-        return Optional.of(response);
     }
 
-    private static Random random = new Random();
+    /**
+     * Sends a ping frame to keep the session alive. Returns false if the session is not usable anymore.
+     */
+    public boolean ping() {
+        synchronized (sendLock) {
+            Session session = this.session;
+            if (session == null || !session.isOpen())
+                return false;
+            try {
+                session.getRemote().sendPing(ByteBuffer.allocate(0));
+                return true;
+            } catch (IOException e) {
+                logger.debug("Failed to send ping:" + e.getMessage());
+                return false;
+            }
+        }
+    }
 
-    private String randomString() {
-        return Long.toHexString(random.nextLong());
+    /**
+     * Returns the time since the adapter sent the last frame of any kind
+     */
+    public long getMillisSinceLastReceived() {
+        return System.currentTimeMillis() - lastReceived;
     }
 
     @Override
     public void onWebSocketClose(int statusCode, @Nullable String reason) {
         logger.trace("Websocket closed with status:" + statusCode);
-        if (CAPTURE_RESPONSE)
-            ps.close();
+        session = null;
+        failAll(new IOException("session was closed"));
+        ConnectionListener listener = connectionListener;
+        if (listener != null)
+            listener.connectionClosed(reason != null ? reason : "Closed with status " + statusCode);
+    }
+
+    /**
+     * Fails all queued and pending requests, there won't be a reply for them on a new session
+     */
+    private void failAll(IOException cause) {
+        PendingRequest request;
+        while (true) {
+            synchronized (queueLock) {
+                request = null;
+                for (Queue<PendingRequest> queue : queues.values()) {
+                    request = queue.poll();
+                    if (request != null)
+                        break;
+                }
+                queuedReads.clear();
+            }
+            if (request == null)
+                break;
+            fail(request, cause);
+        }
+        for (PendingRequest pendingRequest : pending.values()) {
+            if (release(pendingRequest))
+                fail(pendingRequest, cause);
+        }
+    }
+
+    @Override
+    public void onWebSocketPing(@Nullable ByteBuffer payload) {
+        lastReceived = System.currentTimeMillis();
+    }
+
+    @Override
+    public void onWebSocketPong(@Nullable ByteBuffer payload) {
+        lastReceived = System.currentTimeMillis();
     }
 
     @Override
     public void onWebSocketConnect(@Nullable Session session) {
+        lastReceived = System.currentTimeMillis();
         logger.trace("Websocket connected to: " + session.getRemoteAddress());
+        this.session = session;
+        childrenSupported = null;
+        nextRqi.set(ThreadLocalRandom.current().nextLong());
+        connecting.complete(true);
     }
 
     @Override
     public void onWebSocketError(@Nullable Throwable cause) {
         logger.debug("Websocket error:", cause);
+        connecting.complete(false);
     }
 
     @Override
@@ -143,28 +622,109 @@ public class WebsocketHelper implements WebSocketListener {
 
     @Override
     public void onWebSocketText(@Nullable String message) {
+        if (message == null)
+            return;
+        lastReceived = System.currentTimeMillis();
+        try {
+            M2mResponse rsp = ResponseDecoder.decode(message);
+            if (rsp.isRequest()) {
+                onRequest(rsp);
+                return;
+            }
+            PendingRequest request = pendingFor(rsp.getRequestId());
+            if (request == null || !release(request)) {
+                logger.debug("Dropping reply without a pending request, it probably timed out:" + message);
+                return;
+            }
+            long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - request.sentNanos);
+            TrafficRecorder recorder = this.recorder;
+            if (recorder != null)
+                recorder.record(request.item, latency, message);
+            metrics.record(BindingMetrics.LATENCY, request.item, latency);
+            if (rsp.getResponseCode() == M2mResponse.RSC_NOT_FOUND)
+                metrics.increment(BindingMetrics.NOT_FOUND);
+            request.future.complete(rsp);
+            dispatch();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("An exception occured while trying to parse:" + message, e);
+        }
+    }
+
+    private @Nullable PendingRequest pendingFor(@Nullable String rqi) {
+        if (rqi == null)
+            return null;
         try {
-            if (message!=null)
-                receivedMessages.put(message);
-        } catch (InterruptedException e) {
-            // This is so highly unlikely...
-            logger.debug("Error while putting message", e);
+            return pending.get(FrameTemplate.parseRqi(rqi));
+        } catch (NumberFormatException e) {
+            return null;
         }
     }
 
-    public boolean connect(URI url) {
+    /**
+     * Opens the session without blocking. The future completes with false if the adapter could not be reached.
+     */
+    public CompletableFuture<Boolean> connectAsync(URI url) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        connecting = result;
         try {
-            Future<Session> sessionFuture = webSocketClient.connect(this, url);
-            session = sessionFuture.get(10, TimeUnit.SECONDS);
-            return true;
-        } catch (Exception e) {
-            e.printStackTrace();
-            return false;
+            webSocketClient.connect(this, url);
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Failed to connect to:" + url, e);
+            result.complete(false);
         }
+        timeoutScheduler.schedule(() -> {
+            if (result.complete(false))
+                logger.debug("Timeout while connecting to:" + url);
+        }, CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        return result;
+    }
+
+    /**
+     * Handles a request of the adapter, which is a notification for one of the subscriptions
+     */
+    private void onRequest(M2mResponse rqp) throws IOException {
+        String rqi = rqp.getRequestId();
+        String fr = rqp.getFrom();
+        if (rqp.getOperation() != OP_NOTIFY || rqi == null || fr == null) {
+            logger.debug("Ignoring unexpected request of the adapter:" + rqp);
+            return;
+        }
+        sendFrame("{\"m2m:rsp\":{\"rsc\":" + M2mResponse.RSC_OK + ",\"rqi\":" + new JsonPrimitive(rqi) + ",\"to\":"
+                + new JsonPrimitive(fr) + ",\"fr\":" + ORIGINATOR_JSON + "}}");
+        String path = rqp.getSubscription();
+        NotificationListener listener = notificationListener;
+        // Verification requests on creation of the subscription don't carry a value
+        if (path == null || !rqp.hasContentInstance() || listener == null)
+            return;
+        // /[0]/MNAE/<item>/<subscription name>
+        int start = path.indexOf(ITEM_PREFIX);
+        int end = path.lastIndexOf('/');
+        if (start < 0 || end <= start + ITEM_PREFIX.length()) {
+            logger.debug("Notification for an unknown subscription:" + path);
+            return;
+        }
+        listener.notification(path.substring(start + ITEM_PREFIX.length(), end), rqp);
     }
 
     public void disconnect() {
+        Session session = this.session;
         if (session != null)
             session.close();
     }
-}
\ No newline at end of file
+
+    /**
+     * Drops the connection without a close handshake and fails all queued and pending requests
+     */
+    public void abort() {
+        Session session = this.session;
+        this.session = null;
+        if (session != null) {
+            try {
+                session.disconnect();
+            } catch (IOException e) {
+                logger.debug("Failed to abort the session: " + e.getMessage());
+            }
+        }
+        failAll(new IOException("session was aborted"));
+    }
+}
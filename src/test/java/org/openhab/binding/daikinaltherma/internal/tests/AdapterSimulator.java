@@ -0,0 +1,339 @@
+package org.openhab.binding.daikinaltherma.internal.tests;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.ContextHandler;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WebSocketAdapter;
+import org.eclipse.jetty.websocket.server.WebSocketHandler;
+import org.eclipse.jetty.websocket.servlet.WebSocketServletFactory;
+
+/**
+ * Serves the oneM2M protocol of the adapter on ws://localhost:port/mca from a capture file, in the format of
+ * responseCapture.txt. Every port is a separate adapter with its own serial number. Replies can be delayed, dropped
+ * and reordered to see how the binding copes with a slow or flaky network.
+ */
+public class AdapterSimulator implements Closeable {
+
+    private static final String ITEM_PREFIX = "/[0]/MNAE/";
+    private static final String DEVICE_INFO = "/[0]/MNCSE-node/deviceInfo";
+    private static final long FIRST_SERIAL = 175000133;
+
+    private final Map<String, String> responses;
+    private final int adapters;
+    private final Server server = new Server();
+    private final List<ServerConnector> connectors = new ArrayList<>();
+    private final ScheduledExecutorService replies = Executors.newScheduledThreadPool(4);
+    private final Random random = new Random(42);
+
+    private volatile long latencyMillis = 0;
+    private volatile long jitterMillis = 0;
+    private volatile double dropRate = 0;
+    private volatile double reorderRate = 0;
+    private volatile boolean childResources = false;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger dropped = new AtomicInteger();
+    private final AtomicInteger writes = new AtomicInteger();
+
+    public AdapterSimulator(Map<String, String> responses, int adapters) {
+        // Writes change the replies, so they must not leak into the capture of the caller
+        this.responses = new ConcurrentHashMap<>(responses);
+        this.adapters = adapters;
+    }
+
+    /**
+     * Loads a capture, every line is the item followed by the reply frame. Recordings of the TrafficRecorder are
+     * accepted as well, their lines start with @, the time and the latency. The last reply of an item wins.
+     */
+    public static Map<String, String> loadCapture(InputStream is) throws IOException {
+        Map<String, String> responses = new HashMap<>();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.startsWith("@")) {
+                    int time = line.indexOf(' ');
+                    int latency = time < 0 ? -1 : line.indexOf(' ', time + 1);
+                    if (latency < 0)
+                        continue;
+                    line = line.substring(latency + 1);
+                }
+                int idx = line.indexOf(' ');
+                if (idx > 0)
+                    responses.put(line.substring(0, idx), line.substring(idx + 1));
+            }
+        }
+        return responses;
+    }
+
+    /**
+     * The fixed delay of every reply
+     */
+    public AdapterSimulator withLatency(long millis) {
+        this.latencyMillis = millis;
+        return this;
+    }
+
+    /**
+     * A random delay of up to this many milliseconds on top of the latency
+     */
+    public AdapterSimulator withJitter(long millis) {
+        this.jitterMillis = millis;
+        return this;
+    }
+
+    /**
+     * The share of requests that never get a reply
+     */
+    public AdapterSimulator withDropRate(double rate) {
+        this.dropRate = rate;
+        return this;
+    }
+
+    /**
+     * The share of replies that are held back, so that replies to later requests overtake them
+     */
+    public AdapterSimulator withReorderRate(double rate) {
+        this.reorderRate = rate;
+        return this;
+    }
+
+    /**
+     * Whether a retrieve with result content 4 returns the child resources, the real adapter ignores it
+     */
+    public AdapterSimulator withChildResources(boolean enabled) {
+        this.childResources = enabled;
+        return this;
+    }
+
+    public void start() throws Exception {
+        for (int i = 0; i < adapters; i++) {
+            ServerConnector connector = new ServerConnector(server);
+            connector.setHost("127.0.0.1");
+            connector.setPort(0);
+            server.addConnector(connector);
+            connectors.add(connector);
+        }
+        ContextHandler context = new ContextHandler("/mca");
+        context.setAllowNullPathInfo(true);
+        context.setHandler(new WebSocketHandler() {
+            @Override
+            public void configure(WebSocketServletFactory factory) {
+                factory.setCreator((req, resp) -> new AdapterSocket(req.getLocalPort()));
+            }
+        });
+        server.setHandler(context);
+        server.start();
+    }
+
+    public URI getUri(int adapter) {
+        return URI.create("ws://127.0.0.1:" + connectors.get(adapter).getLocalPort() + "/mca");
+    }
+
+    public String getSerial(int adapter) {
+        return Long.toString(FIRST_SERIAL + adapter);
+    }
+
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * The number of content instances that were created, which is how values are written
+     */
+    public int getWriteCount() {
+        return writes.get();
+    }
+
+    public int getDroppedCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            server.stop();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            throw new IOException("Failed to stop the simulator", e);
+        } finally {
+            replies.shutdownNow();
+        }
+    }
+
+    private int adapterOf(int port) {
+        for (int i = 0; i < connectors.size(); i++) {
+            if (connectors.get(i).getLocalPort() == port)
+                return i;
+        }
+        return 0;
+    }
+
+    private class AdapterSocket extends WebSocketAdapter {
+        private final int adapter;
+
+        AdapterSocket(int port) {
+            this.adapter = adapterOf(port);
+        }
+
+        @Override
+        public void onWebSocketText(String message) {
+            requests.incrementAndGet();
+            JsonObject rqp = new JsonParser().parse(message).getAsJsonObject().get("m2m:rqp").getAsJsonObject();
+            if (!rqp.has("op") || !rqp.has("to") || !rqp.has("rqi"))
+                return;
+            if (rqp.get("op").getAsInt() == 1 && rqp.has("pc") && rqp.getAsJsonObject("pc").has("m2m:cin"))
+                store(rqp.get("to").getAsString(), rqp.getAsJsonObject("pc").getAsJsonObject("m2m:cin"));
+            int rcn = rqp.has("rcn") ? rqp.get("rcn").getAsInt() : 1;
+            String reply = reply(rqp.get("op").getAsInt(), rqp.get("to").getAsString(), rcn);
+            JsonObject frame = new JsonParser().parse(reply).getAsJsonObject();
+            frame.get("m2m:rsp").getAsJsonObject().add("rqi", rqp.get("rqi"));
+            long delay;
+            synchronized (random) {
+                if (random.nextDouble() < dropRate) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                delay = latencyMillis + (jitterMillis > 0 ? (long) (random.nextDouble() * jitterMillis) : 0);
+                if (random.nextDouble() < reorderRate)
+                    delay += latencyMillis + jitterMillis + 1;
+            }
+            Session session = getSession();
+            replies.schedule(() -> send(session, frame.toString()), delay, TimeUnit.MILLISECONDS);
+        }
+
+        private String reply(int op, String to, int rcn) {
+            if (op == 1) // Subscriptions are accepted, but no notifications are sent
+                return "{\"m2m:rsp\":{\"rsc\":2001,\"to\":\"/OpenHab\",\"fr\":\"" + to + "\"}}";
+            if (to.equals(DEVICE_INFO))
+                return "{\"m2m:rsp\":{\"rsc\":2000,\"to\":\"/OpenHab\",\"fr\":\"" + DEVICE_INFO
+                        + "\",\"pc\":{\"m2m:dvi\":{\"rn\":\"deviceInfo\",\"ri\":\"0077\",\"pi\":\"0075\",\"ty\":13,"
+                        + "\"st\":0,\"mgd\":1007,\"dlb\":\"" + getSerial(adapter) + "\",\"man\":\"Daikin\","
+                        + "\"mod\":\"BRP069A62\",\"dty\":\"HVAC controller\",\"fwv\":\"17003905\","
+                        + "\"swv\":\"436CC099000\",\"hwv\":\"\"}}}}";
+            if (childResources && rcn == 4 && to.startsWith(ITEM_PREFIX))
+                return childResources(to);
+            String response = to.startsWith(ITEM_PREFIX) ? responses.get(to.substring(ITEM_PREFIX.length())) : null;
+            if (response == null)
+                return "{\"m2m:rsp\":{\"rsc\":4004,\"to\":\"/OpenHab\",\"fr\":\"" + to + "\"}}";
+            return response;
+        }
+
+        /**
+         * Makes the written value the latest value of the item, with the next state tag
+         */
+        private void store(String to, JsonObject written) {
+            writes.incrementAndGet();
+            String item = to.substring(ITEM_PREFIX.length());
+            long st = 0;
+            String previous = responses.get(item + "/la");
+            if (previous != null) {
+                JsonObject pc = new JsonParser().parse(previous).getAsJsonObject().getAsJsonObject("m2m:rsp")
+                        .getAsJsonObject("pc");
+                if (pc != null && pc.has("m2m:cin"))
+                    st = pc.getAsJsonObject("m2m:cin").get("st").getAsLong() + 1;
+            }
+            JsonObject cin = new JsonObject();
+            cin.addProperty("st", st);
+            cin.addProperty("lt", "20190901T120000Z");
+            cin.add("con", written.get("con"));
+            JsonObject pc = new JsonObject();
+            pc.add("m2m:cin", cin);
+            JsonObject rsp = new JsonObject();
+            rsp.addProperty("rsc", 2000);
+            rsp.addProperty("to", "/OpenHab");
+            rsp.addProperty("fr", to + "/la");
+            rsp.add("pc", pc);
+            JsonObject frame = new JsonObject();
+            frame.add("m2m:rsp", rsp);
+            responses.put(item + "/la", frame.toString());
+        }
+
+        /**
+         * Builds the tree of containers below the item, each with the content instance of its latest value
+         */
+        private String childResources(String to) {
+            String item = to.substring(ITEM_PREFIX.length());
+            JsonObject root = new JsonObject();
+            root.addProperty("rn", item.substring(item.lastIndexOf('/') + 1));
+            for (Map.Entry<String, String> entry : responses.entrySet()) {
+                String key = entry.getKey();
+                if (!key.startsWith(item + "/") || !key.endsWith("/la"))
+                    continue;
+                JsonObject rsp = new JsonParser().parse(entry.getValue()).getAsJsonObject().getAsJsonObject("m2m:rsp");
+                if (!rsp.has("pc") || !rsp.getAsJsonObject("pc").has("m2m:cin"))
+                    continue;
+                JsonObject node = root;
+                // The latest value of the item itself belongs to the root
+                if (key.length() > item.length() + "/la".length()) {
+                    String path = key.substring(item.length() + 1, key.length() - "/la".length());
+                    for (String name : path.split("/")) {
+                        node = child(node, name);
+                    }
+                }
+                JsonArray cins = node.has("m2m:cin") ? node.getAsJsonArray("m2m:cin") : new JsonArray();
+                cins.add(rsp.getAsJsonObject("pc").get("m2m:cin"));
+                node.add("m2m:cin", cins);
+            }
+            JsonObject pc = new JsonObject();
+            pc.add("m2m:cnt", root);
+            JsonObject rsp = new JsonObject();
+            rsp.addProperty("rsc", 2000);
+            rsp.addProperty("to", "/OpenHab");
+            rsp.addProperty("fr", to);
+            rsp.add("pc", pc);
+            JsonObject frame = new JsonObject();
+            frame.add("m2m:rsp", rsp);
+            return frame.toString();
+        }
+
+        private JsonObject child(JsonObject node, String name) {
+            JsonArray children = node.has("m2m:cnt") ? node.getAsJsonArray("m2m:cnt") : new JsonArray();
+            node.add("m2m:cnt", children);
+            for (int i = 0; i < children.size(); i++) {
+                JsonObject child = children.get(i).getAsJsonObject();
+                if (name.equals(child.get("rn").getAsString()))
+                    return child;
+            }
+            JsonObject child = new JsonObject();
+            child.addProperty("rn", name);
+            children.add(child);
+            return child;
+        }
+
+        private void send(Session session, String frame) {
+            if (session == null || !session.isOpen())
+                return;
+            try {
+                synchronized (session) {
+                    session.getRemote().sendString(frame);
+                }
+            } catch (IOException e) {
+                // The client went away
+            }
+        }
+    }
+}
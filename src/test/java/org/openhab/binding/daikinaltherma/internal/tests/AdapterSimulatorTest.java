@@ -0,0 +1,247 @@
+package org.openhab.binding.daikinaltherma.internal.tests;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jmdns.ServiceInfo;
+
+import org.eclipse.jetty.websocket.client.WebSocketClient;
+import org.eclipse.smarthome.config.discovery.DiscoveryResult;
+import org.eclipse.smarthome.core.thing.Thing;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openhab.binding.daikinaltherma.internal.CommandWriter;
+import org.openhab.binding.daikinaltherma.internal.DaikinAlthermaBindingConstants;
+import org.openhab.binding.daikinaltherma.internal.DaikinAlthermaMDNSDiscoveryParticipant;
+import org.openhab.binding.daikinaltherma.internal.M2mResponse;
+import org.openhab.binding.daikinaltherma.internal.RequestPriority;
+import org.openhab.binding.daikinaltherma.internal.ResponseDecoder;
+import org.openhab.binding.daikinaltherma.internal.TrafficRecorder;
+import org.openhab.binding.daikinaltherma.internal.WebsocketHelper;
+
+public class AdapterSimulatorTest {
+
+    private static final int ADAPTERS = 3;
+
+    private AdapterSimulator simulator;
+
+    private Map<String, String> responses;
+
+    private WebSocketClient client;
+
+    @Rule
+    public TemporaryFolder userData = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        responses = AdapterSimulator.loadCapture(getClass().getResourceAsStream("/responseCapture.txt"));
+        simulator = new AdapterSimulator(responses, ADAPTERS);
+        simulator.start();
+        client = new WebSocketClient();
+        client.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.stop();
+        simulator.close();
+    }
+
+    @Test
+    public void repliesAreMatchedUnderLatencyAndReordering() throws Exception {
+        simulator.withLatency(20).withJitter(30).withReorderRate(0.3);
+        List<String> items = new ArrayList<>(responses.keySet());
+        List<WebsocketHelper> helpers = new ArrayList<>();
+        List<CompletableFuture<Map<String, Optional<M2mResponse>>>> rounds = new ArrayList<>();
+        for (int i = 0; i < ADAPTERS; i++) {
+            WebsocketHelper helper = new WebsocketHelper(client);
+            assertTrue("Failed to connect to adapter " + i, helper.connectAsync(simulator.getUri(i)).get());
+            assertEquals(simulator.getSerial(i), helper.discover().get().getDeviceInfo().get("dlb"));
+            helpers.add(helper);
+            rounds.add(helper.queryAll(items));
+        }
+        for (CompletableFuture<Map<String, Optional<M2mResponse>>> round : rounds) {
+            Map<String, Optional<M2mResponse>> results = round.get(30, TimeUnit.SECONDS);
+            assertEquals(items.size(), results.size());
+            for (String item : items) {
+                Optional<M2mResponse> rsp = results.get(item);
+                assertTrue("No reply for " + item, rsp.isPresent());
+                assertEquals("Reply for the wrong request", "/[0]/MNAE/" + item, rsp.get().getFrom());
+            }
+        }
+        for (WebsocketHelper helper : helpers) {
+            helper.disconnect();
+        }
+        assertTrue(simulator.getRequestCount() >= ADAPTERS * items.size());
+    }
+
+    @Test
+    public void recordedTrafficCanBeReplayed() throws Exception {
+        File file = new File(userData.getRoot(), "traffic.rec");
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        TrafficRecorder recorder = new TrafficRecorder(file, scheduler);
+        recorder.start();
+        WebsocketHelper helper = new WebsocketHelper(client);
+        helper.setRecorder(recorder);
+        assertTrue(helper.connectAsync(simulator.getUri(0)).get());
+        helper.queryAll(responses.keySet()).get(30, TimeUnit.SECONDS);
+        helper.disconnect();
+        recorder.stop();
+        scheduler.shutdown();
+        assertTrue(scheduler.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(0, recorder.getDropped());
+
+        Map<String, String> recorded;
+        try (InputStream is = new FileInputStream(file)) {
+            recorded = AdapterSimulator.loadCapture(is);
+        }
+        assertEquals(responses.keySet(), recorded.keySet());
+        for (String item : responses.keySet()) {
+            assertEquals(ResponseDecoder.decode(responses.get(item)).getContent(),
+                    ResponseDecoder.decode(recorded.get(item)).getContent());
+        }
+    }
+
+    @Test
+    public void droppedRepliesTimeOut() throws Exception {
+        simulator.withDropRate(1);
+        WebsocketHelper helper = new WebsocketHelper(client);
+        assertTrue(helper.connectAsync(simulator.getUri(0)).get());
+        try {
+            helper.query("1/Sensor/IndoorTemperature/la").get(30, TimeUnit.SECONDS);
+            fail("Expected the query to time out");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertEquals(1, simulator.getDroppedCount());
+
+        // The in-flight slot of the dropped request must be free again
+        simulator.withDropRate(0);
+        assertTrue(helper.query("1/Sensor/IndoorTemperature/la").get(30, TimeUnit.SECONDS).isOk());
+        helper.disconnect();
+    }
+
+    @Test
+    public void childResourcesAreRetrievedPerIndex() throws Exception {
+        List<String> items = new ArrayList<>();
+        for (String item : responses.keySet()) {
+            if (item.endsWith("/la") && item.indexOf('/') < item.length() - 3)
+                items.add(item.substring(0, item.length() - 3));
+        }
+        WebsocketHelper helper = new WebsocketHelper(client);
+        assertTrue(helper.connectAsync(simulator.getUri(0)).get());
+        Map<String, Optional<M2mResponse>> each = helper.queryLatest(items).get(30, TimeUnit.SECONDS);
+        int unsupported = simulator.getRequestCount();
+        helper.disconnect();
+
+        simulator.withChildResources(true);
+        helper = new WebsocketHelper(client);
+        assertTrue(helper.connectAsync(simulator.getUri(0)).get());
+        Map<String, Optional<M2mResponse>> bulk = helper.queryLatest(items).get(30, TimeUnit.SECONDS);
+        int requests = simulator.getRequestCount() - unsupported;
+        helper.disconnect();
+
+        assertEquals("Expected one request per index", 3, requests);
+        assertEquals(each.keySet(), bulk.keySet());
+        for (String item : items) {
+            if (!each.get(item).isPresent() || !each.get(item).get().hasContentInstance())
+                continue;
+            M2mResponse value = bulk.get(item).orElse(null);
+            assertNotNull("No value for " + item, value);
+            assertEquals(each.get(item).get().getContent(), value.getContent());
+            assertEquals(each.get(item).get().getStateTag(), value.getStateTag());
+            assertEquals("/[0]/MNAE/" + item + "/la", value.getFrom());
+        }
+    }
+
+    @Test
+    public void interactiveRequestsOvertakeQueuedPolls() throws Exception {
+        simulator.withLatency(20);
+        String item = "1/Sensor/IndoorTemperature/la";
+        List<String> items = new ArrayList<>(responses.keySet());
+        items.remove(item);
+        items.add(item);
+        WebsocketHelper helper = new WebsocketHelper(client);
+        helper.setMaxInFlight(1);
+        assertTrue(helper.connectAsync(simulator.getUri(0)).get());
+        CompletableFuture<Map<String, Optional<M2mResponse>>> round = helper.queryAll(items);
+        // The last item of the round is still queued, the refresh shares its request and moves it up
+        CompletableFuture<M2mResponse> refresh = helper.query(item, RequestPriority.INTERACTIVE);
+        assertTrue(refresh.get(30, TimeUnit.SECONDS).isOk());
+        assertFalse("The refresh waited for the poll round", round.isDone());
+        round.get(30, TimeUnit.SECONDS);
+        assertEquals(items.size(), simulator.getRequestCount());
+        helper.disconnect();
+    }
+
+    @Test
+    public void rapidWritesAreCoalesced() throws Exception {
+        String item = "1/Operation/TargetTemperature";
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        WebsocketHelper helper = new WebsocketHelper(client);
+        assertTrue(helper.connectAsync(simulator.getUri(0)).get());
+        CommandWriter writer = new CommandWriter(helper, scheduler, 200);
+        List<CompletableFuture<M2mResponse>> writes = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            writes.add(writer.write(item, Integer.toString(12 + i)));
+        }
+        for (CompletableFuture<M2mResponse> write : writes) {
+            assertEquals(M2mResponse.RSC_CREATED, write.get(30, TimeUnit.SECONDS).getResponseCode());
+        }
+        assertEquals(1, simulator.getWriteCount());
+        assertEquals("31", helper.query(item + "/la").get(30, TimeUnit.SECONDS).getContent());
+        helper.disconnect();
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void discoveryProbesAllAddressesAndCachesTheResult() throws Exception {
+        AtomicInteger probes = new AtomicInteger();
+        DaikinAlthermaMDNSDiscoveryParticipant participant = new DaikinAlthermaMDNSDiscoveryParticipant(() -> {
+            probes.incrementAndGet();
+            return new WebsocketHelper(client);
+        });
+        ServiceInfo service = mock(ServiceInfo.class);
+        // The first address is never answered, the adapter has to be found through the second one
+        when(service.getInetAddresses()).thenReturn(
+                new InetAddress[] { InetAddress.getByName("192.0.2.1"), InetAddress.getByName("127.0.0.1") });
+        when(service.getPort()).thenReturn(simulator.getUri(0).getPort());
+        when(service.getName()).thenReturn(simulator.getSerial(0));
+
+        DiscoveryResult result = null;
+        long end = System.currentTimeMillis() + 30000;
+        while (result == null && System.currentTimeMillis() < end) {
+            result = participant.createResult(service);
+            Thread.sleep(50);
+        }
+        assertNotNull("The adapter was not discovered", result);
+        assertEquals(simulator.getSerial(0), result.getProperties().get(Thing.PROPERTY_SERIAL_NUMBER));
+        assertEquals("127.0.0.1", result.getProperties().get(DaikinAlthermaBindingConstants.PARAM_HOST));
+        assertEquals(2, probes.get());
+
+        // Further announcements are answered from the cache
+        int requests = simulator.getRequestCount();
+        assertEquals(result, participant.createResult(service));
+        assertEquals(2, probes.get());
+        assertEquals(requests, simulator.getRequestCount());
+    }
+}
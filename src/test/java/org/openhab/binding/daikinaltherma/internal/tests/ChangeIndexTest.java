@@ -0,0 +1,34 @@
+package org.openhab.binding.daikinaltherma.internal.tests;
+
+import static org.junit.Assert.*;
+
+import org.eclipse.smarthome.core.library.types.OnOffType;
+import org.eclipse.smarthome.core.thing.ChannelUID;
+import org.junit.Test;
+import org.openhab.binding.daikinaltherma.internal.ChangeIndex;
+
+public class ChangeIndexTest {
+
+    private static final ChannelUID CHANNEL = new ChannelUID("daikinaltherma:adapter:1234:1#1_Operation_Power");
+
+    @Test
+    public void invalidateKeepsTheContent() {
+        ChangeIndex changes = new ChangeIndex();
+        assertTrue(changes.update(CHANNEL, 3, "20190819T212846Z", "\"on\""));
+        assertFalse(changes.update(CHANNEL, 3, "20190819T212846Z", "\"on\""));
+        changes.invalidate(CHANNEL);
+        assertEquals("\"on\"", changes.getContent(CHANNEL));
+        assertTrue(changes.update(CHANNEL, 3, "20190819T212846Z", "\"on\""));
+    }
+
+    @Test
+    public void onlyPostedCommandsAreEchoes() {
+        ChangeIndex changes = new ChangeIndex();
+        changes.posted(CHANNEL, OnOffType.ON);
+        changes.posted(CHANNEL, OnOffType.OFF);
+        assertTrue(changes.isEcho(CHANNEL, OnOffType.ON));
+        assertTrue(changes.isEcho(CHANNEL, OnOffType.OFF));
+        // Each posted command matches a single echo, a second one is a command of the user
+        assertFalse(changes.isEcho(CHANNEL, OnOffType.ON));
+    }
+}
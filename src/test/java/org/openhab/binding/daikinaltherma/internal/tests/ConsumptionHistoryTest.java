@@ -0,0 +1,52 @@
+package org.openhab.binding.daikinaltherma.internal.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+
+import org.junit.Test;
+import org.openhab.binding.daikinaltherma.internal.ConsumptionHistory;
+import org.openhab.binding.daikinaltherma.internal.ConsumptionHistory.Period;
+import org.openhab.binding.daikinaltherma.internal.M2mResponse;
+import org.openhab.binding.daikinaltherma.internal.ResponseDecoder;
+
+public class ConsumptionHistoryTest {
+
+    private static final String SERIES = "Electrical/Heating";
+
+    @Test
+    public void bucketsAreSummedPerPeriod() throws Exception {
+        ConsumptionHistory history = ConsumptionHistory.decode("{\"Electrical\":{\"Heating\":{"
+                + "\"D\":[0,0,1,0,0,0,0,2,0,0,0,0,0,0,0,0,0,0,0,3,0,0,null,null],"
+                + "\"W\":[2,4,1,3,2,3,3,2,3,2,7,3,null,null],"
+                + "\"M\":[null,null,null,null,null,null,null,null,null,null,null,null,"
+                + "null,0,82,23,100,90,66,34,null,null,null,null]}}}");
+        assertEquals(24, history.getBuckets(SERIES, "D").length);
+        assertTrue(Double.isNaN(history.getBuckets(SERIES, "D")[23]));
+        assertEquals(3, history.getTotal(SERIES, Period.YESTERDAY), 0);
+        assertEquals(3, history.getTotal(SERIES, Period.TODAY), 0);
+        assertEquals(18, history.getTotal(SERIES, Period.LAST_WEEK), 0);
+        assertEquals(17, history.getTotal(SERIES, Period.THIS_WEEK), 0);
+        assertTrue(Double.isNaN(history.getTotal(SERIES, Period.LAST_YEAR)));
+        assertEquals(395, history.getTotal(SERIES, Period.THIS_YEAR), 0);
+        assertEquals(0, history.getBuckets("Electrical/Cooling", "D").length);
+    }
+
+    @Test
+    public void seriesAreReadFromTheUnitProfile() {
+        String profile = "{\"Sensor\":[\"TankTemperature\"],\"Consumption\":{\"Electrical\":{\"unit\":\"kWh\","
+                + "\"Heating\":{\"Daily\":{\"contentCount\":24,\"resolution\":2},"
+                + "\"Weekly\":{\"contentCount\":14,\"resolution\":1}}}}}";
+        assertEquals(Collections.singletonList(SERIES), ConsumptionHistory.seriesOf(profile));
+        assertEquals(Collections.emptyList(), ConsumptionHistory.seriesOf("{\"Sensor\":[]}"));
+    }
+
+    @Test
+    public void containerStateIsDecoded() throws Exception {
+        M2mResponse container = ResponseDecoder.decode("{\"m2m:rsp\":{\"rsc\":2000,\"rqi\":\"1\","
+                + "\"pc\":{\"m2m:cnt\":{\"rn\":\"Consumption\",\"ty\":3,\"st\":634,\"lt\":\"20190831T200001Z\"}}}}");
+        assertFalse(container.hasContentInstance());
+        assertEquals(634, container.getStateTag());
+        assertEquals("20190831T200001Z", container.getLastModified());
+    }
+}
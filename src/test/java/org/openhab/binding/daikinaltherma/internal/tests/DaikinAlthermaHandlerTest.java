@@ -12,31 +12,43 @@ import java.net.InetAddress;
 import java.net.URI;
 import java.net.UnknownHostException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.jmdns.ServiceInfo;
 
-import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
 import org.eclipse.jetty.websocket.client.WebSocketClient;
 import org.eclipse.smarthome.config.core.Configuration;
+import org.eclipse.smarthome.core.thing.Channel;
+import org.eclipse.smarthome.core.thing.ChannelUID;
 import org.eclipse.smarthome.core.thing.Thing;
 import org.eclipse.smarthome.core.thing.ThingStatus;
 import org.eclipse.smarthome.core.thing.ThingUID;
 import org.eclipse.smarthome.core.thing.binding.ThingHandlerCallback;
 import org.eclipse.smarthome.core.thing.link.ItemChannelLink;
+import org.eclipse.smarthome.core.types.UnDefType;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.openhab.binding.daikinaltherma.internal.ChannelDiscovery;
+import org.openhab.binding.daikinaltherma.internal.ChannelDiscovery.DiscoveredItem;
 import org.openhab.binding.daikinaltherma.internal.DaikinAlthermaBindingConstants;
 import org.openhab.binding.daikinaltherma.internal.DaikinAlthermaHandler;
 import org.openhab.binding.daikinaltherma.internal.DaikinAlthermaMDNSDiscoveryParticipant;
+import org.openhab.binding.daikinaltherma.internal.M2mResponse;
+import org.openhab.binding.daikinaltherma.internal.ResponseDecoder;
 import org.openhab.binding.daikinaltherma.internal.WebsocketHelper;
 
 public class DaikinAlthermaHandlerTest {
@@ -49,6 +61,13 @@ public class DaikinAlthermaHandlerTest {
     @Mock
     private Thing thing;
 
+    @Rule
+    public TemporaryFolder userData = new TemporaryFolder();
+
+    private AtomicInteger profileQueries = new AtomicInteger();
+
+    private AtomicInteger itemQueries = new AtomicInteger();
+
     private WebsocketHelper websocket = new WebsocketHelper(createWebsocketClient()) {
 
         private Map<String, String> responses = new HashMap<>();
@@ -73,19 +92,31 @@ public class DaikinAlthermaHandlerTest {
         }
 
         @Override
-        public boolean connect(URI url) {
-            return true;
-            //return super.connect(url);
+        public CompletableFuture<Boolean> connectAsync(URI url) {
+            return CompletableFuture.completedFuture(true);
+            //return super.connectAsync(url);
         }
 
         @Override
-        public Optional<String> sendQuery(String item) {
-            String response=responses.get(item);
-            return Optional.ofNullable(response);
-        }
-
-        public Optional<String> sendDiscovery() {
-            return Optional.of("{\"m2m:rsp\":{\"rsc\":2000,\"rqi\":\"32751f8541ccfa6b\",\"to\":\"/OpenHab\",\"fr\":\"/[0]/MNCSE-node/deviceInfo\",\"pc\":{\"m2m:dvi\":{\"rn\":\"deviceInfo\",\"ri\":\"0077\",\"pi\":\"0075\",\"ty\":13,\"ct\":\"20000000T000000Z\",\"lt\":\"20000000T000000Z\",\"st\":0,\"mgd\":1007,\"dlb\":\"175000133\",\"man\":\"Daikin\",\"mod\":\"BRP069A62\",\"dty\":\"HVAC controller\",\"fwv\":\"17003905\",\"swv\":\"436CC099000\",\"hwv\":\"\"}}}}");
+        protected void sendFrame(String frame) {
+            JsonObject rqp = new JsonParser().parse(frame).getAsJsonObject().get("m2m:rqp").getAsJsonObject();
+            String to = rqp.get("to").getAsString();
+            String response;
+            if (to.equals("/[0]/MNCSE-node/deviceInfo")) {
+                response = "{\"m2m:rsp\":{\"rsc\":2000,\"rqi\":\"32751f8541ccfa6b\",\"to\":\"/OpenHab\",\"fr\":\"/[0]/MNCSE-node/deviceInfo\",\"pc\":{\"m2m:dvi\":{\"rn\":\"deviceInfo\",\"ri\":\"0077\",\"pi\":\"0075\",\"ty\":13,\"ct\":\"20000000T000000Z\",\"lt\":\"20000000T000000Z\",\"st\":0,\"mgd\":1007,\"dlb\":\"175000133\",\"man\":\"Daikin\",\"mod\":\"BRP069A62\",\"dty\":\"HVAC controller\",\"fwv\":\"17003905\",\"swv\":\"436CC099000\",\"hwv\":\"\"}}}}";
+            } else {
+                if (to.endsWith("/UnitProfile/la"))
+                    profileQueries.incrementAndGet();
+                else if (to.endsWith("/la"))
+                    itemQueries.incrementAndGet();
+                response = responses.get(to.substring("/[0]/MNAE/".length()));
+                if (response == null)
+                    response = "{\"m2m:rsp\":{\"rsc\":4004,\"rqi\":\"0\",\"to\":\"/OpenHab\",\"fr\":\"" + to + "\"}}";
+            }
+            // Reply asynchronously with the rqi of the request, like the adapter does
+            JsonObject reply = new JsonParser().parse(response).getAsJsonObject();
+            reply.get("m2m:rsp").getAsJsonObject().add("rqi", rqp.get("rqi"));
+            CompletableFuture.runAsync(() -> onWebSocketText(reply.toString()));
         }
 
     };
@@ -93,6 +124,7 @@ public class DaikinAlthermaHandlerTest {
     @Before
     public void setUp() throws IOException, InterruptedException {
         MockitoAnnotations.initMocks(this);
+        System.setProperty("openhab.userdata", userData.getRoot().getAbsolutePath());
         when(thing.getConfiguration()).thenReturn(new Configuration());
         when(thing.getUID()).thenReturn(new ThingUID(DaikinAlthermaBindingConstants.THING_TYPE_ADAPTER, "1234"));
         handler = new DaikinAlthermaHandler(thing, websocket);
@@ -132,13 +164,97 @@ public class DaikinAlthermaHandlerTest {
         inOrder.verify(callback).statusUpdated(any(), argThat(arg -> arg.getStatus().equals(ThingStatus.UNKNOWN)));
         inOrder.verify(callback, timeout(100000)).statusUpdated(any(), argThat(arg -> arg.getStatus().equals(ThingStatus.ONLINE)));
         Thing newThing=handler.getThing();
-        assertEquals("Expected a different number of channels", 24, newThing.getChannels().size());
+        assertEquals("Expected a different number of channels", 37, countChannels(newThing, false));
+        assertEquals("Expected a different number of metric channels", 11, countChannels(newThing, true));
         verify(callback).thingUpdated(any());
+        assertEquals("Number:Temperature", channelItemType(newThing, "1/Operation/TargetTemperature"));
+        assertEquals("Switch", channelItemType(newThing, "1/Operation/Power"));
+        assertEquals("Switch", channelItemType(newThing, "2/UnitStatus/ErrorState"));
+        assertEquals("DateTime", channelItemType(newThing, "0/DateTime"));
+        assertEquals("String", channelItemType(newThing, "1/Operation/OperationMode"));
+    }
+
+    private int countChannels(Thing thing, boolean metrics) {
+        int count = 0;
+        for (Channel channel : thing.getChannels()) {
+            if ("metrics".equals(channel.getUID().getGroupId()) == metrics)
+                count++;
+        }
+        return count;
+    }
+
+    private String channelItemType(Thing thing, String item) {
+        String id = item.replace('/', '_');
+        for (Channel channel : thing.getChannels()) {
+            if (channel.getUID().getIdWithoutGroup().equals(id))
+                return channel.getAcceptedItemType();
+        }
+        fail("No channel for " + item);
+        return null;
+    }
+
+    @Test
+    public void initializeThingFromCache() {
+        handler.initialize();
+        verify(callback, timeout(100000)).statusUpdated(any(), argThat(arg -> arg.getStatus().equals(ThingStatus.ONLINE)));
+        handler.dispose();
+        int queries = profileQueries.get();
+        assertTrue("Expected the UnitProfiles to be queried", queries > 0);
+
+        // The firmware didn't change, so the second start must not discover the channels again
+        ThingHandlerCallback secondCallback = mock(ThingHandlerCallback.class);
+        handler = new DaikinAlthermaHandler(thing, websocket);
+        handler.setCallback(secondCallback);
+        handler.initialize();
+        assertEquals("Expected the channels from the cache", 37, countChannels(handler.getThing(), false));
+        verify(secondCallback, timeout(100000)).statusUpdated(any(), argThat(arg -> arg.getStatus().equals(ThingStatus.ONLINE)));
+        assertEquals("Expected no UnitProfile queries", queries, profileQueries.get());
+    }
+
+    @Test
+    public void discoveryDoesNotProbeItems() throws Exception {
+        itemQueries.set(0);
+        ChannelDiscovery first = new ChannelDiscovery(websocket, 8);
+        List<DiscoveredItem> items = first.discover().get(30, TimeUnit.SECONDS);
+        assertEquals("Expected the items to come from the UnitProfiles", 0, itemQueries.get());
+        Map<String, String> profiles = first.getProfiles();
+        assertEquals(3, profiles.size());
+
+        // Nothing changed, so the previous items are kept
+        ChannelDiscovery unchanged = new ChannelDiscovery(websocket, 8).withPrevious(profiles, items);
+        assertEquals(items, unchanged.discover().get(30, TimeUnit.SECONDS));
+
+        // The unit whose UnitProfile differs is read again
+        Map<String, String> outdated = new HashMap<>(profiles);
+        outdated.put("1", "{}");
+        ChannelDiscovery changed = new ChannelDiscovery(websocket, 8).withPrevious(outdated, items);
+        assertEquals(items, changed.discover().get(30, TimeUnit.SECONDS));
+        assertEquals(0, itemQueries.get());
+    }
+
+    @Test
+    public void linkingAMissingItemPublishesUndef() {
+        handler.initialize();
+        verify(callback, timeout(100000)).statusUpdated(any(), argThat(arg -> arg.getStatus().equals(ThingStatus.ONLINE)));
+        ChannelUID uid = channelUID(handler.getThing(), "2/Operation/powerful");
+        handler.channelLinked(uid);
+        verify(callback, timeout(10000)).stateUpdated(uid, UnDefType.UNDEF);
+        handler.dispose();
+    }
+
+    private ChannelUID channelUID(Thing thing, String item) {
+        String id = item.replace('/', '_');
+        for (Channel channel : thing.getChannels()) {
+            if (channel.getUID().getIdWithoutGroup().equals(id))
+                return channel.getUID();
+        }
+        fail("No channel for " + item);
+        return null;
     }
 
     @Test
     public void testDiscovery() throws UnknownHostException {
-        DaikinAlthermaMDNSDiscoveryParticipant discover = new DaikinAlthermaMDNSDiscoveryParticipant(websocket);
+        DaikinAlthermaMDNSDiscoveryParticipant discover = new DaikinAlthermaMDNSDiscoveryParticipant(() -> websocket);
         ServiceInfo service = mock(ServiceInfo.class);
         InetAddress IP = InetAddress.getByName("192.168.188.200");
         when(service.getInetAddresses()).thenReturn(new InetAddress[]{IP});
@@ -148,13 +264,15 @@ public class DaikinAlthermaHandlerTest {
     }
 
     @Test
-    public void testJSONParser() {
-        String json = "{\"rsc\":2000,\"rqi\":\"c78b60079fb05f10\",\"to\":\"/OpenHab\",\"fr\":\"/[0]/MNAE/2/Operation/TargetTemperature/la\",\"pc\":{\"m2m:cin\":{\"rn\":\"00000002\",\"ri\":\"0042_00000002\",\"pi\":\"0042\",\"ty\":4,\"ct\":\"20190819T212846Z\",\"lt\":\"20190819T212846Z\",\"st\":2,\"con\":46.0000000000000000}}}";
-        JsonElement obj = new JsonParser().parse(json);
-        Optional<JsonElement> result = handler.getJsonPath(obj.getAsJsonObject(), false, "pc", "m2m:cin", "con");
-        System.out.println(result);
-        Assert.assertTrue(result.isPresent());
-        Assert.assertTrue(result.get().isJsonPrimitive());
+    public void testJSONParser() throws IOException {
+        String json = "{\"m2m:rsp\":{\"rsc\":2000,\"rqi\":\"c78b60079fb05f10\",\"to\":\"/OpenHab\",\"fr\":\"/[0]/MNAE/2/Operation/TargetTemperature/la\",\"pc\":{\"m2m:cin\":{\"rn\":\"00000002\",\"ri\":\"0042_00000002\",\"pi\":\"0042\",\"ty\":4,\"ct\":\"20190819T212846Z\",\"lt\":\"20190819T212846Z\",\"st\":2,\"con\":46.0000000000000000}}}}";
+        M2mResponse result = ResponseDecoder.decode(json);
+        Assert.assertEquals(2000, result.getResponseCode());
+        Assert.assertEquals("c78b60079fb05f10", result.getRequestId());
+        Assert.assertTrue(result.hasContentInstance());
+        Assert.assertEquals(2, result.getStateTag());
+        Assert.assertEquals("20190819T212846Z", result.getLastModified());
+        Assert.assertEquals("46.0000000000000000", result.getContent());
     }
 
 }
\ No newline at end of file
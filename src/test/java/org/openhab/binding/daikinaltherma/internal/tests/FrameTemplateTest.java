@@ -0,0 +1,44 @@
+package org.openhab.binding.daikinaltherma.internal.tests;
+
+import static org.junit.Assert.*;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+import org.openhab.binding.daikinaltherma.internal.FrameTemplate;
+
+public class FrameTemplateTest {
+
+    @Test
+    public void rqiIsFilledIn() {
+        FrameTemplate template = new FrameTemplate("1/Sensor/IndoorTemperature/la", 2,
+                "/[0]/MNAE/1/Sensor/IndoorTemperature/la", "");
+        String frame = template.fill(0x1c3ac0b7592824eeL);
+        JsonObject rqp = new JsonParser().parse(frame).getAsJsonObject().get("m2m:rqp").getAsJsonObject();
+        assertEquals(2, rqp.get("op").getAsInt());
+        assertEquals("/[0]/MNAE/1/Sensor/IndoorTemperature/la", rqp.get("to").getAsString());
+        assertEquals("1c3ac0b7592824ee", rqp.get("rqi").getAsString());
+        assertEquals(0x1c3ac0b7592824eeL, FrameTemplate.parseRqi("1c3ac0b7592824ee"));
+        assertEquals(42, FrameTemplate.parseRqi("000000000000002a"));
+        assertEquals(-1, FrameTemplate.parseRqi("ffffffffffffffff"));
+        assertEquals(frame.length(), template.fill(-1).length());
+        assertEquals("/[0]/MNAE/1/Sensor/IndoorTemperature/la", template.getReadKey());
+    }
+
+    @Test
+    public void contentFollowsTheRqi() {
+        FrameTemplate template = new FrameTemplate("1/Operation/Power", 1, "/[0]/MNAE/1/Operation/Power",
+                ",\"ty\":4,\"pc\":{\"m2m:cin\":{\"con\":\"on\",\"cnf\":\"text/plain:0\"}}");
+        JsonObject rqp = new JsonParser().parse(template.fill(7)).getAsJsonObject().get("m2m:rqp")
+                .getAsJsonObject();
+        assertEquals("0000000000000007", rqp.get("rqi").getAsString());
+        assertEquals("on", rqp.get("pc").getAsJsonObject().get("m2m:cin").getAsJsonObject().get("con").getAsString());
+        assertNull(template.getReadKey());
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void foreignRqiIsRejected() {
+        FrameTemplate.parseRqi("2a");
+    }
+}
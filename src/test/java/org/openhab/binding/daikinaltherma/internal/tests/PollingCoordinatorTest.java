@@ -0,0 +1,109 @@
+package org.openhab.binding.daikinaltherma.internal.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.binding.daikinaltherma.internal.PollScheduler;
+import org.openhab.binding.daikinaltherma.internal.PollingCoordinator;
+
+public class PollingCoordinatorTest {
+
+    private static final int ADAPTERS = 6;
+
+    private ScheduledExecutorService scheduler;
+
+    private PollingCoordinator coordinator;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        coordinator = new PollingCoordinator(scheduler, 2, 2);
+    }
+
+    @After
+    public void tearDown() {
+        coordinator.shutdown();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void concurrentPollsAreCappedAndEveryAdapterIsPolled() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<AtomicInteger> polls = new ArrayList<>();
+        for (int i = 0; i < ADAPTERS; i++) {
+            AtomicInteger count = new AtomicInteger();
+            polls.add(count);
+            coordinator.register(() -> {
+                int now = running.incrementAndGet();
+                maxRunning.accumulateAndGet(now, Math::max);
+                count.incrementAndGet();
+                // Each round takes a while, so the adapters have to take turns
+                CompletableFuture<Void> round = new CompletableFuture<>();
+                scheduler.schedule(() -> {
+                    running.decrementAndGet();
+                    round.complete(null);
+                }, 300, TimeUnit.MILLISECONDS);
+                return round;
+            }, 250);
+        }
+        Thread.sleep(4000);
+        assertTrue("Too many adapters polled at once: " + maxRunning.get(), maxRunning.get() <= 2);
+        for (int i = 0; i < ADAPTERS; i++) {
+            assertTrue("Adapter " + i + " was starved", polls.get(i).get() >= 2);
+        }
+    }
+
+    @Test
+    public void cancelledRegistrationIsNoLongerPolled() throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        PollingCoordinator.Registration registration = coordinator.register(() -> {
+            count.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        }, 250);
+        Thread.sleep(1000);
+        registration.cancel();
+        int polled = count.get();
+        assertTrue(polled > 0);
+        Thread.sleep(750);
+        assertEquals(polled, count.get());
+    }
+
+    @Test
+    public void firstRoundsAreSpreadOverTheInterval() {
+        long interval = TimeUnit.SECONDS.toMillis(60);
+        List<String> items = Collections.singletonList("1/Sensor/IndoorTemperature");
+        Set<Long> firstRounds = new HashSet<>();
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for (int i = 0; i < ADAPTERS; i++) {
+            PollingCoordinator.Registration registration = coordinator.register(
+                    () -> CompletableFuture.completedFuture(null), 1000);
+            PollScheduler schedule = new PollScheduler(60, 600, Collections.emptyMap(),
+                    registration.getOffset(interval));
+            // All adapters start at the same time
+            long now = 0;
+            while (schedule.due(items, now).isEmpty())
+                now += 1000;
+            assertTrue(now < interval);
+            firstRounds.add(now);
+            min = Math.min(min, now);
+            max = Math.max(max, now);
+        }
+        assertEquals("Adapters polled their first round in the same second", ADAPTERS, firstRounds.size());
+        assertTrue("First rounds are not spread over the interval", max - min >= interval / 2);
+    }
+}
@@ -0,0 +1,81 @@
+package org.openhab.binding.daikinaltherma.internal.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.openhab.binding.daikinaltherma.internal.M2mResponse;
+import org.openhab.binding.daikinaltherma.internal.ResponseCache;
+import org.openhab.binding.daikinaltherma.internal.ResponseDecoder;
+
+public class ResponseCacheTest {
+
+    private static final String ITEM = "1/Sensor/IndoorTemperature";
+
+    private static M2mResponse cin(long st, String con) throws IOException {
+        return ResponseDecoder.decode("{\"m2m:rsp\":{\"rsc\":2000,\"rqi\":\"1\",\"fr\":\"/[0]/MNAE/" + ITEM
+                + "/la\",\"pc\":{\"m2m:cin\":{\"st\":" + st + ",\"con\":" + con + "}}}}");
+    }
+
+    @Test
+    public void concurrentRefreshesShareOneRequest() throws Exception {
+        ResponseCache cache = new ResponseCache(TimeUnit.SECONDS.toNanos(5));
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<M2mResponse> reply = new CompletableFuture<>();
+        CompletableFuture<M2mResponse> first = cache.get(ITEM, item -> {
+            loads.incrementAndGet();
+            return reply;
+        });
+        CompletableFuture<M2mResponse> second = cache.get(ITEM, item -> {
+            loads.incrementAndGet();
+            return reply;
+        });
+        assertEquals(1, loads.get());
+        reply.complete(cin(3, "21.5"));
+        assertEquals("21.5", first.get().getContent());
+        assertEquals("21.5", second.get().getContent());
+
+        // The reply answers refreshes until it expires
+        cache.get(ITEM, item -> {
+            loads.incrementAndGet();
+            return reply;
+        }).get();
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void olderValuesDoNotReplaceNewerOnes() throws Exception {
+        ResponseCache cache = new ResponseCache(TimeUnit.SECONDS.toNanos(5));
+        cache.put(ITEM, cin(4, "22"));
+        cache.put(ITEM, cin(3, "21"));
+        assertEquals("22", cache.get(ITEM).getContent());
+        cache.invalidate(ITEM);
+        assertNull(cache.get(ITEM));
+    }
+
+    @Test
+    public void disabledCacheStillSharesRequests() throws Exception {
+        ResponseCache cache = new ResponseCache(0);
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<M2mResponse> reply = new CompletableFuture<>();
+        cache.get(ITEM, item -> {
+            loads.incrementAndGet();
+            return reply;
+        });
+        cache.get(ITEM, item -> {
+            loads.incrementAndGet();
+            return reply;
+        });
+        reply.complete(cin(1, "20"));
+        assertNull(cache.get(ITEM));
+        cache.get(ITEM, item -> {
+            loads.incrementAndGet();
+            return reply;
+        });
+        assertEquals(2, loads.get());
+    }
+}
@@ -0,0 +1,62 @@
+package org.openhab.binding.daikinaltherma.internal.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.openhab.binding.daikinaltherma.internal.ValueHistory;
+
+public class ValueHistoryTest {
+
+    @Test
+    public void emptyHistoryHasNoAggregates() {
+        ValueHistory history = new ValueHistory(4);
+        assertEquals(0, history.size());
+        assertTrue(Double.isNaN(history.getAverage()));
+        assertTrue(Double.isNaN(history.getMinimum()));
+        assertTrue(Double.isNaN(history.getRatePerHour()));
+        history.add(0, 21.5);
+        assertEquals(21.5, history.getMaximum(), 0);
+        assertTrue(Double.isNaN(history.getRatePerHour()));
+    }
+
+    @Test
+    public void aggregatesMatchTheLastValues() {
+        int size = 16;
+        ValueHistory history = new ValueHistory(size);
+        Random random = new Random(42);
+        double[] all = new double[1000];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = random.nextInt(50) - 10 + random.nextDouble();
+            history.add(i * 60_000L, all[i]);
+            int first = Math.max(0, i - size + 1);
+            double sum = 0;
+            double min = Double.MAX_VALUE;
+            double max = -Double.MAX_VALUE;
+            for (int j = first; j <= i; j++) {
+                sum += all[j];
+                min = Math.min(min, all[j]);
+                max = Math.max(max, all[j]);
+            }
+            assertEquals(i - first + 1, history.size());
+            assertEquals(sum / (i - first + 1), history.getAverage(), 1e-9);
+            assertEquals(min, history.getMinimum(), 0);
+            assertEquals(max, history.getMaximum(), 0);
+            if (i > 0)
+                assertEquals((all[i] - all[first]) * 60 / (i - first), history.getRatePerHour(), 1e-9);
+        }
+    }
+
+    @Test
+    public void valuesWithTheSameStateTagAreAddedOnce() {
+        ValueHistory history = new ValueHistory(4);
+        assertTrue(history.add(0, 20, 7));
+        assertFalse(history.add(60_000, 20, 7));
+        assertTrue(history.add(120_000, 22, 8));
+        assertTrue(history.add(180_000, 22, -1));
+        assertTrue(history.add(240_000, 22, -1));
+        assertEquals(4, history.size());
+        assertEquals(21.5, history.getAverage(), 0);
+    }
+}
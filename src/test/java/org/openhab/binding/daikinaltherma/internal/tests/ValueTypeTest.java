@@ -0,0 +1,22 @@
+package org.openhab.binding.daikinaltherma.internal.tests;
+
+import static org.junit.Assert.*;
+
+import org.eclipse.smarthome.core.library.types.OnOffType;
+import org.eclipse.smarthome.core.types.UnDefType;
+import org.junit.Test;
+import org.openhab.binding.daikinaltherma.internal.ValueType;
+
+public class ValueTypeTest {
+
+    @Test
+    public void onlyKnownSwitchValuesAreParsed() {
+        assertEquals(OnOffType.ON, ValueType.SWITCH.parse("on"));
+        assertEquals(OnOffType.ON, ValueType.SWITCH.parse("1"));
+        assertEquals(OnOffType.OFF, ValueType.SWITCH.parse("off"));
+        assertEquals(OnOffType.OFF, ValueType.SWITCH.parse("standby"));
+        assertEquals(OnOffType.OFF, ValueType.SWITCH.parse("0"));
+        assertEquals(UnDefType.UNDEF, ValueType.SWITCH.parse("heating"));
+        assertEquals(UnDefType.UNDEF, ValueType.SWITCH.parse(""));
+    }
+}